@@ -0,0 +1,112 @@
+package com.transferwise.common.baseutils.benchmarks;
+
+import com.transferwise.common.baseutils.concurrency.DiscardingQueueProcessor;
+import com.transferwise.common.baseutils.concurrency.DiscardingQueueProcessor.ExecutionMode;
+import com.transferwise.common.baseutils.concurrency.DiscardingQueueProcessor.ScheduleResult;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures `DiscardingQueueProcessor.schedule` called by many producers at once.
+ *
+ * <p>The number of producers is the number of JMH threads, e.g. `-t 8`. `scheduleThroughput` reports ops/s and `scheduleLatency` the
+ * enqueue latency percentiles. Counters `scheduled` and `discarded` give the discard ratio.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@SuppressFBWarnings("PA_PUBLIC_PRIMITIVE_ATTRIBUTE")
+public class DiscardingQueueProcessorBenchmark {
+
+  private static final Long DATA = 1L;
+
+  /**
+   * Processing cost in `Blackhole.consumeCPU` tokens.
+   */
+  @Param({"0", "1000"})
+  public int processingCost;
+  @Param({"1", "8"})
+  public int maxConcurrency;
+  @Param({"100", "10000"})
+  public int hardQueueLimit;
+  @Param({"DISPATCHER", "WORKERS"})
+  public ExecutionMode executionMode;
+
+  private ExecutorService executorService;
+  private DiscardingQueueProcessor<Long, Long> processor;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    executorService = Executors.newCachedThreadPool();
+    processor = new DiscardingQueueProcessor<>(executorService, payload -> Blackhole.consumeCPU(processingCost));
+    processor.setMaxConcurrency(maxConcurrency)
+        .setHardQueueLimit(hardQueueLimit)
+        .setSoftQueueLimit(hardQueueLimit)
+        .setExecutionMode(executionMode);
+    processor.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    processor.stop(Duration.ZERO).get(1, TimeUnit.MINUTES);
+    executorService.shutdownNow();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public ScheduleResult scheduleThroughput(ScheduleCounters counters) {
+    return schedule(counters);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public ScheduleResult scheduleLatency(ScheduleCounters counters) {
+    return schedule(counters);
+  }
+
+  private ScheduleResult schedule(ScheduleCounters counters) {
+    ScheduleResult result = processor.schedule(DATA);
+    if (result.isScheduled()) {
+      counters.scheduled++;
+    } else {
+      counters.discarded++;
+    }
+    return result;
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @SuppressFBWarnings("PA_PUBLIC_PRIMITIVE_ATTRIBUTE")
+  public static class ScheduleCounters {
+
+    public long scheduled;
+    public long discarded;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      scheduled = 0;
+      discarded = 0;
+    }
+  }
+}
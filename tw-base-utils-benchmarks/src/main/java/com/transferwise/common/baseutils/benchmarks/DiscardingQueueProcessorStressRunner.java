@@ -0,0 +1,218 @@
+package com.transferwise.common.baseutils.benchmarks;
+
+import com.transferwise.common.baseutils.concurrency.DiscardingQueueProcessor;
+import com.transferwise.common.baseutils.concurrency.DiscardingQueueProcessor.ExecutionMode;
+import com.transferwise.common.baseutils.concurrency.DiscardingQueueProcessor.ScheduleResult;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Stress run of `DiscardingQueueProcessor` over a matrix of settings, for comparing changes in its locking model.
+ *
+ * <p>Every producer schedules as fast as it can for the run duration. Reported are throughput, enqueue latency percentiles, discard ratio
+ * and the time producers spent blocked or waiting, which shows contention on the processor's locks.
+ *
+ * <p>The only argument is the run duration in seconds, 2 by default.
+ */
+public final class DiscardingQueueProcessorStressRunner {
+
+  private static final int[] PRODUCER_COUNTS = {1, 4, 16};
+  private static final int[] PROCESSING_COSTS = {0, 1000};
+  private static final int[] MAX_CONCURRENCIES = {1, 8};
+  private static final int[] HARD_QUEUE_LIMITS = {100, 10_000};
+
+  /**
+   * Latency of every n-th schedule call is recorded, to keep the recording overhead low.
+   */
+  private static final int LATENCY_SAMPLING_INTERVAL = 16;
+  private static final int MAX_LATENCY_SAMPLES_PER_PRODUCER = 1 << 18;
+  private static final Long DATA = 1L;
+
+  private DiscardingQueueProcessorStressRunner() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    Duration runDuration = Duration.ofSeconds(args.length > 0 ? Long.parseLong(args[0]) : 2);
+
+    ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+    if (threadMxBean.isThreadContentionMonitoringSupported()) {
+      threadMxBean.setThreadContentionMonitoringEnabled(true);
+    }
+
+    System.out.printf("%-10s %9s %4s %11s %5s %12s %12s %9s %9s %9s %8s %10s %10s%n", "mode", "producers", "cost", "concurrency",
+        "limit", "ops/s", "processed/s", "p50 us", "p99 us", "p999 us", "discard", "blocked ms", "waited ms");
+    for (ExecutionMode executionMode : ExecutionMode.values()) {
+      for (int producersCount : PRODUCER_COUNTS) {
+        for (int processingCost : PROCESSING_COSTS) {
+          for (int maxConcurrency : MAX_CONCURRENCIES) {
+            for (int hardQueueLimit : HARD_QUEUE_LIMITS) {
+              RunSettings settings = new RunSettings().setExecutionMode(executionMode).setProducersCount(producersCount)
+                  .setProcessingCost(processingCost).setMaxConcurrency(maxConcurrency).setHardQueueLimit(hardQueueLimit);
+              print(settings, run(settings, runDuration));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static RunResult run(RunSettings settings, Duration runDuration) throws Exception {
+    ExecutorService executorService = Executors.newCachedThreadPool();
+    LongAdder processedCount = new LongAdder();
+    DiscardingQueueProcessor<Long, Long> processor = new DiscardingQueueProcessor<>(executorService, payload -> {
+      Blackhole.consumeCPU(settings.getProcessingCost());
+      processedCount.increment();
+    });
+    processor.setMaxConcurrency(settings.getMaxConcurrency())
+        .setHardQueueLimit(settings.getHardQueueLimit())
+        .setSoftQueueLimit(settings.getHardQueueLimit())
+        .setExecutionMode(settings.getExecutionMode());
+    processor.start();
+
+    List<Producer> producers = new ArrayList<>();
+    CountDownLatch startLatch = new CountDownLatch(1);
+    for (int i = 0; i < settings.getProducersCount(); i++) {
+      Producer producer = new Producer(processor, startLatch);
+      producers.add(producer);
+      producer.start();
+    }
+
+    long startTimeNanos = System.nanoTime();
+    long deadlineNanos = startTimeNanos + runDuration.toNanos();
+    producers.forEach(producer -> producer.deadlineNanos = deadlineNanos);
+    startLatch.countDown();
+    for (Producer producer : producers) {
+      producer.join();
+    }
+    long elapsedNanos = System.nanoTime() - startTimeNanos;
+    long processed = processedCount.sum();
+
+    processor.stop(Duration.ZERO).get(1, TimeUnit.MINUTES);
+    executorService.shutdownNow();
+
+    RunResult result = new RunResult();
+    long[] latencySamples = new long[0];
+    for (Producer producer : producers) {
+      result.scheduledCount += producer.scheduledCount;
+      result.discardedCount += producer.discardedCount;
+      result.blockedTimeMillis += producer.blockedTimeMillis;
+      result.waitedTimeMillis += producer.waitedTimeMillis;
+
+      int offset = latencySamples.length;
+      latencySamples = Arrays.copyOf(latencySamples, offset + producer.latencySamplesCount);
+      System.arraycopy(producer.latencySamples, 0, latencySamples, offset, producer.latencySamplesCount);
+    }
+    Arrays.sort(latencySamples);
+    result.latencySamples = latencySamples;
+    result.elapsedNanos = elapsedNanos;
+    result.processedCount = processed;
+    return result;
+  }
+
+  private static void print(RunSettings settings, RunResult result) {
+    double elapsedSeconds = result.elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+    long callsCount = result.scheduledCount + result.discardedCount;
+    System.out.printf("%-10s %9d %4d %11d %5d %12.0f %12.0f %9.1f %9.1f %9.1f %7.2f%% %10d %10d%n", settings.getExecutionMode(),
+        settings.getProducersCount(), settings.getProcessingCost(), settings.getMaxConcurrency(), settings.getHardQueueLimit(),
+        callsCount / elapsedSeconds, result.processedCount / elapsedSeconds, percentileMicros(result.latencySamples, 0.5),
+        percentileMicros(result.latencySamples, 0.99), percentileMicros(result.latencySamples, 0.999),
+        callsCount == 0 ? 0 : 100.0 * result.discardedCount / callsCount, result.blockedTimeMillis, result.waitedTimeMillis);
+  }
+
+  private static double percentileMicros(long[] sortedSamples, double percentile) {
+    if (sortedSamples.length == 0) {
+      return 0;
+    }
+    int index = Math.min(sortedSamples.length - 1, (int) Math.ceil(percentile * sortedSamples.length) - 1);
+    return sortedSamples[Math.max(0, index)] / (double) TimeUnit.MICROSECONDS.toNanos(1);
+  }
+
+  private static class Producer extends Thread {
+
+    private final DiscardingQueueProcessor<Long, Long> processor;
+    private final CountDownLatch startLatch;
+    private final long[] latencySamples = new long[MAX_LATENCY_SAMPLES_PER_PRODUCER];
+    private volatile long deadlineNanos;
+    private int latencySamplesCount;
+    private long scheduledCount;
+    private long discardedCount;
+    private long blockedTimeMillis;
+    private long waitedTimeMillis;
+
+    Producer(DiscardingQueueProcessor<Long, Long> processor, CountDownLatch startLatch) {
+      this.processor = processor;
+      this.startLatch = startLatch;
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        startLatch.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+      ThreadInfo startInfo = threadMxBean.getThreadInfo(getId());
+      long callsCount = 0;
+      while (System.nanoTime() < deadlineNanos) {
+        ScheduleResult result;
+        if (callsCount % LATENCY_SAMPLING_INTERVAL == 0 && latencySamplesCount < latencySamples.length) {
+          long startTimeNanos = System.nanoTime();
+          result = processor.schedule(DATA);
+          latencySamples[latencySamplesCount++] = System.nanoTime() - startTimeNanos;
+        } else {
+          result = processor.schedule(DATA);
+        }
+        if (result.isScheduled()) {
+          scheduledCount++;
+        } else {
+          discardedCount++;
+        }
+        callsCount++;
+      }
+      ThreadInfo endInfo = threadMxBean.getThreadInfo(getId());
+      if (startInfo != null && endInfo != null && startInfo.getBlockedTime() >= 0) {
+        blockedTimeMillis = endInfo.getBlockedTime() - startInfo.getBlockedTime();
+        waitedTimeMillis = endInfo.getWaitedTime() - startInfo.getWaitedTime();
+      }
+    }
+  }
+
+  @Data
+  @Accessors(chain = true)
+  private static class RunSettings {
+
+    private ExecutionMode executionMode;
+    private int producersCount;
+    private int processingCost;
+    private int maxConcurrency;
+    private int hardQueueLimit;
+  }
+
+  private static class RunResult {
+
+    private long elapsedNanos;
+    private long scheduledCount;
+    private long discardedCount;
+    private long processedCount;
+    private long blockedTimeMillis;
+    private long waitedTimeMillis;
+    private long[] latencySamples;
+  }
+}
@@ -0,0 +1,67 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import com.google.common.base.Preconditions;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+/**
+ * Additive increase, multiplicative decrease concurrency limit.
+ *
+ * <p>A failed processing, or a processing taking longer than `latencyThreshold`, decreases the limit by `backoffRatio`.
+ *
+ * <p>When the limit is actually being used, the limit is increased by one after every `limit` successful processings.
+ */
+@Accessors(chain = true)
+public class AimdConcurrencyLimit implements ConcurrencyLimit {
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final AtomicInteger limit;
+  private final AtomicInteger successesSinceIncrease = new AtomicInteger();
+
+  @Setter
+  @SuppressWarnings("checkstyle:MagicNumber")
+  private double backoffRatio = 0.9;
+  /**
+   * Processing taking longer than this, is considered as a sign of downstream getting overloaded.
+   */
+  @Setter
+  private Duration latencyThreshold;
+
+  public AimdConcurrencyLimit(int minLimit, int initialLimit, int maxLimit) {
+    Preconditions.checkArgument(minLimit >= 1, "Min limit has to be at least 1.");
+    Preconditions.checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit, "Initial limit has to be between min and max limits.");
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.limit = new AtomicInteger(initialLimit);
+  }
+
+  @Override
+  public int getLimit() {
+    return limit.get();
+  }
+
+  @Override
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  @Override
+  public void onSample(long processingTimeNanos, int inFlight, boolean failed) {
+    if (failed || (latencyThreshold != null && processingTimeNanos > latencyThreshold.toNanos())) {
+      successesSinceIncrease.set(0);
+      limit.updateAndGet(current -> Math.max(minLimit, Math.min(current - 1, (int) (current * backoffRatio))));
+    } else if (inFlight * 2 >= limit.get()) {
+      if (successesSinceIncrease.incrementAndGet() >= limit.get()) {
+        successesSinceIncrease.set(0);
+        limit.updateAndGet(current -> Math.min(maxLimit, current + 1));
+      }
+    }
+  }
+}
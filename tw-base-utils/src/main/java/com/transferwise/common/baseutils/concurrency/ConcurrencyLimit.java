@@ -0,0 +1,26 @@
+package com.transferwise.common.baseutils.concurrency;
+
+/**
+ * Concurrency limit, which can change at runtime, based on how the processing is going.
+ */
+public interface ConcurrencyLimit {
+
+  /**
+   * Current maximum number of concurrent executions.
+   */
+  int getLimit();
+
+  /**
+   * Upper bound for the limit, used for sizing resources like worker threads.
+   */
+  int getMaxLimit();
+
+  /**
+   * Called after every processing.
+   *
+   * @param processingTimeNanos how long the processing took.
+   * @param inFlight            number of concurrent executions, including the current one.
+   * @param failed              if the processing threw an exception.
+   */
+  void onSample(long processingTimeNanos, int inFlight, boolean failed);
+}
@@ -0,0 +1,185 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Cron expression with fields `second minute hour day-of-month month day-of-week`, where the seconds field can be left out.
+ *
+ * <p>A field is `*`, `?`, a value, a range `a-b`, a step `*&#47;n`, `a/n` or `a-b/n`, or a comma separated list of those. Months and days of
+ * week can be given by their first three letters, Sunday is both 0 and 7. When both day of month and day of week are restricted, days
+ * matching either of those match, as in Unix cron. Macros `@yearly`, `@monthly`, `@weekly`, `@daily` and `@hourly` are supported too.
+ */
+@SuppressWarnings("checkstyle:MagicNumber")
+final class CronExpression {
+
+  private static final Map<String, String> MACROS = Map.of(
+      "@yearly", "0 0 1 1 *",
+      "@annually", "0 0 1 1 *",
+      "@monthly", "0 0 1 * *",
+      "@weekly", "0 0 * * 0",
+      "@daily", "0 0 * * *",
+      "@midnight", "0 0 * * *",
+      "@hourly", "0 * * * *");
+  private static final List<String> MONTH_NAMES = List.of("JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC");
+  private static final List<String> DAY_OF_WEEK_NAMES = List.of("SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT");
+  /**
+   * A valid expression matches at least once in 4 years, for the 29th of February.
+   */
+  private static final int MAX_SEARCH_YEARS = 5;
+  private static final int MAX_DAY_OF_WEEK = 7;
+
+  private final String expression;
+  private final long seconds;
+  private final long minutes;
+  private final long hours;
+  private final long daysOfMonth;
+  private final long months;
+  private final long daysOfWeek;
+  private final boolean daysOfMonthRestricted;
+  private final boolean daysOfWeekRestricted;
+
+  private CronExpression(String expression, String[] fields) {
+    this.expression = expression;
+    int offset = fields.length == 6 ? 1 : 0;
+    this.seconds = offset == 1 ? parseField(fields[0], 0, 59, null, 0) : 1L;
+    this.minutes = parseField(fields[offset], 0, 59, null, 0);
+    this.hours = parseField(fields[offset + 1], 0, 23, null, 0);
+    this.daysOfMonth = parseField(fields[offset + 2], 1, 31, null, 0);
+    this.months = parseField(fields[offset + 3], 1, 12, MONTH_NAMES, 1);
+    long daysOfWeekWithSeven = parseField(fields[offset + 4], 0, MAX_DAY_OF_WEEK, DAY_OF_WEEK_NAMES, 0);
+    this.daysOfWeek = (daysOfWeekWithSeven | (daysOfWeekWithSeven >>> MAX_DAY_OF_WEEK)) & ~(1L << MAX_DAY_OF_WEEK);
+    this.daysOfMonthRestricted = isRestricted(fields[offset + 2]);
+    this.daysOfWeekRestricted = isRestricted(fields[offset + 4]);
+  }
+
+  static CronExpression parse(String expression) {
+    String trimmed = expression.trim();
+    String[] fields = MACROS.getOrDefault(trimmed.toLowerCase(Locale.ROOT), trimmed).split("\\s+");
+    if (fields.length != 5 && fields.length != 6) {
+      throw new IllegalArgumentException("Cron expression '" + expression + "' has to have 5 or 6 fields.");
+    }
+    CronExpression cronExpression;
+    try {
+      cronExpression = new CronExpression(expression, fields);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Cron expression '" + expression + "' is invalid. " + e.getMessage(), e);
+    }
+    if (cronExpression.daysOfMonthRestricted && !cronExpression.daysOfWeekRestricted && !cronExpression.hasValidDayOfMonth()) {
+      throw new IllegalArgumentException("Cron expression '" + expression + "' does not match any day of the year.");
+    }
+    return cronExpression;
+  }
+
+  /**
+   * First time matching the expression, which is after the given time.
+   */
+  long nextTime(long afterMillis, ZoneId zoneId) {
+    LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(afterMillis), zoneId).truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+    LocalDateTime limit = time.plusYears(MAX_SEARCH_YEARS);
+    while (time.isBefore(limit)) {
+      if (!matches(months, time.getMonthValue())) {
+        time = time.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1).plusMonths(1);
+      } else if (!matchesDay(time.toLocalDate())) {
+        time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+      } else if (!matches(hours, time.getHour())) {
+        time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+      } else if (!matches(minutes, time.getMinute())) {
+        time = time.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+      } else if (!matches(seconds, time.getSecond())) {
+        time = time.plusSeconds(1);
+      } else {
+        // Local times skipped by a daylight saving change are moved forward, repeated ones match only once.
+        long timeMillis = time.atZone(zoneId).toInstant().toEpochMilli();
+        if (timeMillis > afterMillis) {
+          return timeMillis;
+        }
+        time = time.plusSeconds(1);
+      }
+    }
+    throw new IllegalStateException("Cron expression '" + expression + "' does not match any time in " + MAX_SEARCH_YEARS + " years.");
+  }
+
+  @Override
+  public String toString() {
+    return expression;
+  }
+
+  private boolean matchesDay(LocalDate date) {
+    boolean dayOfMonthMatches = matches(daysOfMonth, date.getDayOfMonth());
+    boolean dayOfWeekMatches = matches(daysOfWeek, date.getDayOfWeek().getValue() % MAX_DAY_OF_WEEK);
+    if (daysOfMonthRestricted && daysOfWeekRestricted) {
+      return dayOfMonthMatches || dayOfWeekMatches;
+    }
+    return dayOfMonthMatches && dayOfWeekMatches;
+  }
+
+  private boolean hasValidDayOfMonth() {
+    return Arrays.stream(Month.values()).anyMatch(month -> matches(months, month.getValue())
+        && (daysOfMonth & ((1L << (month.maxLength() + 1)) - 1)) != 0);
+  }
+
+  private static boolean matches(long values, int value) {
+    return (values & (1L << value)) != 0;
+  }
+
+  private static boolean isRestricted(String field) {
+    return !field.startsWith("*") && !field.startsWith("?");
+  }
+
+  private static long parseField(String field, int min, int max, List<String> names, int namesOffset) {
+    long values = 0;
+    for (String part : field.split(",", -1)) {
+      String range = part;
+      int step = 1;
+      int slashIndex = part.indexOf('/');
+      if (slashIndex >= 0) {
+        range = part.substring(0, slashIndex);
+        step = Integer.parseInt(part.substring(slashIndex + 1));
+        if (step <= 0) {
+          throw new IllegalArgumentException("Step in '" + part + "' has to be positive.");
+        }
+      }
+      int from;
+      int to;
+      if (range.equals("*") || range.equals("?")) {
+        from = min;
+        to = max;
+      } else {
+        int dashIndex = range.indexOf('-');
+        if (dashIndex >= 0) {
+          from = parseValue(range.substring(0, dashIndex), names, namesOffset);
+          to = parseValue(range.substring(dashIndex + 1), names, namesOffset);
+        } else {
+          from = parseValue(range, names, namesOffset);
+          to = slashIndex >= 0 ? max : from;
+        }
+      }
+      if (from < min || to > max || from > to) {
+        throw new IllegalArgumentException("Values in '" + part + "' have to be from " + min + " to " + max + ".");
+      }
+      for (int value = from; value <= to; value += step) {
+        values |= 1L << value;
+      }
+    }
+    return values;
+  }
+
+  private static int parseValue(String value, List<String> names, int namesOffset) {
+    if (names != null) {
+      int index = names.indexOf(value.toUpperCase(Locale.ROOT));
+      if (index >= 0) {
+        return index + namesOffset;
+      }
+    }
+    return Integer.parseInt(value);
+  }
+}
@@ -0,0 +1,38 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import java.time.Duration;
+import java.time.ZoneId;
+
+/**
+ * Execution times of a cron task. Times, which have passed while the previous execution was running, are skipped.
+ */
+class CronSchedule implements TaskSchedule {
+
+  private final CronExpression cronExpression;
+  private final ZoneId zoneId;
+  private final Duration maxPeriodJitter;
+  /**
+   * The last execution time without the jitter, so the jitter does not move the next execution time.
+   */
+  private volatile long lastMatchTimeMillis = Long.MIN_VALUE;
+
+  CronSchedule(String cronExpression, ZoneId zoneId, Duration maxPeriodJitter) {
+    this.cronExpression = CronExpression.parse(cronExpression);
+    this.zoneId = zoneId;
+    this.maxPeriodJitter = maxPeriodJitter;
+  }
+
+  /**
+   * The first matching time after `nowMillis`, with `maxInitialJitter` applied instead of the period jitter.
+   */
+  long firstExecutionTime(long nowMillis, Duration maxInitialJitter) {
+    lastMatchTimeMillis = cronExpression.nextTime(nowMillis, zoneId);
+    return lastMatchTimeMillis + Jitter.randomMillis(maxInitialJitter);
+  }
+
+  @Override
+  public long nextExecutionTime(long executionTimeMillis, long nowMillis) {
+    lastMatchTimeMillis = cronExpression.nextTime(Math.max(lastMatchTimeMillis, nowMillis), zoneId);
+    return lastMatchTimeMillis + Jitter.randomMillis(maxPeriodJitter);
+  }
+}
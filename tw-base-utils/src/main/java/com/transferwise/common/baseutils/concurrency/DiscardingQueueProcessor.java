@@ -1,16 +1,37 @@
 package com.transferwise.common.baseutils.concurrency;
 
+import com.google.common.base.Preconditions;
 import com.transferwise.common.baseutils.clock.ClockHolder;
+import com.transferwise.common.baseutils.meters.cache.IMeterCache;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -24,6 +45,10 @@ import lombok.extern.slf4j.Slf4j;
 public class DiscardingQueueProcessor<T, K> {
 
   private static final int SMALL_TIME_INTERVAL_S = 5;
+  private static final long SMALL_TIME_INTERVAL_NS = TimeUnit.SECONDS.toNanos(SMALL_TIME_INTERVAL_S);
+  private static final long CONCURRENCY_LIMIT_RECHECK_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(50);
+  private static final long CAPACITY_RECHECK_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(50);
+  private static final long KEY_RATE_LIMITS_SWEEP_INTERVAL_NS = TimeUnit.SECONDS.toNanos(1);
 
   /**
    * If returns `true`, the soft limit will be applied.
@@ -39,130 +64,1346 @@ public class DiscardingQueueProcessor<T, K> {
   private ExecutorService executorService;
   @Setter
   private Consumer<Payload<K>> processor;
+  /**
+   * If set, payloads are handed over in batches and `processor` is not used.
+   */
+  @Setter
+  private Consumer<List<Payload<K>>> batchProcessor;
+  /**
+   * Maximum number of payloads handed over to `batchProcessor` at once.
+   */
+  @Setter
+  @SuppressWarnings("checkstyle:MagicNumber")
+  private int maxBatchSize = 100;
+  /**
+   * How long to wait for more payloads to arrive, before handing over a batch which is not full.
+   */
+  @Setter
+  private Duration maxLinger = Duration.ZERO;
+  /**
+   * If set, payloads with the same ordering key are processed one after another, in the order they were scheduled.
+   *
+   * <p>Payloads with different keys are processed concurrently. Payloads with a `null` key are not ordered.
+   *
+   * <p>The key has to stay the same for a payload, until it has been processed.
+   */
+  @Setter
+  private Function<? super K, ?> orderingKeyExtractor;
+  /**
+   * If set, scheduling a payload with a key, which is already pending in the queue, merges the data into the pending payload.
+   *
+   * <p>The queue size is then bounded by the number of distinct keys. Payloads with a `null` key are not coalesced.
+   *
+   * <p>The merged payload keeps the scheduling time of the pending one, so it is not starved by a steady stream of updates.
+   */
+  @Setter
+  private Function<? super K, ?> coalescingKeyExtractor;
+  /**
+   * Merges the pending data with the newly scheduled one. Last write wins by default.
+   *
+   * <p>The merged data has to have the same coalescing key.
+   */
+  @Setter
+  private BinaryOperator<K> coalescingMerger = (pendingData, newData) -> newData;
   @Setter
   private Consumer<Throwable> errorProcessor;
+  /**
+   * Has to be set before starting the processor.
+   */
+  @Setter
+  private ExecutionMode executionMode = ExecutionMode.DISPATCHER;
+  /**
+   * In `WORKERS` execution mode, the number of workers is fixed when the processor is started.
+   *
+   * <p>In `VIRTUAL_THREADS` execution mode, this is the number of payloads in progress at once, and can be in the thousands.
+   */
   @Setter
   private int maxConcurrency = Runtime.getRuntime().availableProcessors();
+  /**
+   * If set, the concurrency is limited by this adaptive limit instead of `maxConcurrency`.
+   *
+   * <p>In `WORKERS` execution mode, `ConcurrencyLimit.getMaxLimit()` workers are started and the ones above the current limit are suspended.
+   */
+  @Setter
+  private ConcurrencyLimit adaptiveConcurrencyLimit;
+  /**
+   * If set, payloads are taken from the queue at most at this rate. Payloads wait in the queue for a permit, without taking any concurrency.
+   *
+   * <p>Has to be set before starting the processor, but the rate itself can be changed at runtime.
+   */
+  @Setter
+  private RateLimit rateLimit;
+  /**
+   * If set, payloads with the same `rateLimitKeyExtractor` key are taken from the queue at most at this rate, each key having its own
+   * token bucket.
+   *
+   * <p>Payloads over the rate of their key wait aside, still counting into the queue size, so other keys are not held up. Payloads with a
+   * `null` key are not limited by key.
+   */
+  @Setter
+  private RateLimit keyRateLimit;
   @Setter
+  private Function<? super K, ?> rateLimitKeyExtractor;
+  /**
+   * The queue is a ring buffer allocated for the hard limit, when the processor is started or the first data is scheduled.
+   *
+   * <p>The ring buffer is never replaced, so the limit can not be increased above its capacity afterwards.
+   */
   @SuppressWarnings("checkstyle:MagicNumber")
-  private int hardQueueLimit = 2000;
+  private volatile int hardQueueLimit = 2000;
   @Setter
   @SuppressWarnings("checkstyle:MagicNumber")
   private int softQueueLimit = 500;
+  /**
+   * What `schedule(T)` does, when the hard queue limit is reached.
+   */
+  @Setter
+  private BackpressurePolicy backpressurePolicy = BackpressurePolicy.DISCARD;
+  /**
+   * How long `schedule(T)` waits for the queue capacity with the `BLOCK` backpressure policy.
+   */
+  @Setter
+  @SuppressWarnings("checkstyle:MagicNumber")
+  private Duration maxScheduleWait = Duration.ofSeconds(30);
+  /**
+   * If set, new data is discarded while the queue is overloaded, meaning the queue time of payloads has stayed above this target for the
+   * whole `sheddingInterval`.
+   *
+   * <p>Only data matching `softLimitPredicate` is discarded, when the predicate is set.
+   */
+  @Setter
+  private Duration sheddingTargetDelay;
+  @Setter
+  @SuppressWarnings("checkstyle:MagicNumber")
+  private Duration sheddingInterval = Duration.ofMillis(100);
+  /**
+   * If set, data above the hard queue limit is written to segment files instead of being discarded, and read back in order, when the
+   * queue capacity frees up.
+   *
+   * <p>While there is data in the overflow, new data goes there as well, to keep the order. Data scheduled with `scheduleAsync` does not
+   * overflow. Overflow can not be used together with lanes.
+   *
+   * <p>Overflow files are not meant for persistence and are deleted when the processor stops. Data left over by `stop(Duration)` stays in
+   * the overflow until taken out with `drainTo`.
+   */
+  @Setter
+  private PayloadCodec<K> overflowCodec;
+  /**
+   * Temporary files directory is used, when not set.
+   */
+  @Setter
+  private Path overflowDirectory;
+  @Setter
+  @SuppressWarnings("checkstyle:MagicNumber")
+  private long overflowSegmentBytes = 16L * 1024 * 1024;
+  /**
+   * When the overflow is full, data is discarded again.
+   */
+  @Setter
+  @SuppressWarnings("checkstyle:MagicNumber")
+  private long maxOverflowBytes = 1024L * 1024 * 1024;
   @Setter
   private Duration queueTimeout;
   @Setter
   private Consumer<Payload<K>> timeoutsHander;
+  /**
+   * If set, timed out payloads are handed over in batches and `timeoutsHander` is not used.
+   */
+  @Setter
+  private Consumer<List<Payload<K>>> batchTimeoutsHandler;
+  /**
+   * Payloads are checked for the `queueTimeout` when taken from the queue, before those take any concurrency.
+   *
+   * <p>Values above 1 allow to sweep up to that many timed out payloads from the head of the queue at once.
+   */
+  @Setter
+  private int expiredPayloadsSweepLimit = 1;
+  /**
+   * If set, payloads are put into separate lanes, each with its own queue limit, and lanes are served by their weights.
+   *
+   * <p>A lane gets at least its weight's share of processing, when other lanes have payloads as well. Spare capacity goes to the lanes in the
+   * given order, so higher priority lanes should come first.
+   *
+   * <p>Lanes are set up when the processor is started.
+   */
+  @Setter
+  private List<Lane> lanes;
+  /**
+   * Picks the lane name for the data. The first lane is used for `null`.
+   */
+  @Setter
+  private Function<? super T, String> laneSelector;
+  /**
+   * Used for tagging metrics.
+   */
+  @Setter
+  private String name;
+  /**
+   * If set, metrics are registered on start. Use `MeterCache` to wrap a `MeterRegistry`.
+   *
+   * <p>Gauges `tw.dqp.queue.size`, `tw.dqp.concurrency`, `tw.dqp.concurrency.limit`, counters `tw.dqp.scheduled`, `tw.dqp.coalesced`,
+   * `tw.dqp.discarded`, `tw.dqp.timed_out`, `tw.dqp.failed` and timers `tw.dqp.schedule.wait.time`, `tw.dqp.queue.time`,
+   * `tw.dqp.processing.time` are tagged with the processor `name`. Gauge `tw.dqp.overflow.size` and counter `tw.dqp.overflowed`
+   * track the overflow.
+   *
+   * <p>With lanes, gauge `tw.dqp.lane.queue.size` and counters `tw.dqp.lane.scheduled`, `tw.dqp.lane.discarded` are tagged with the `lane` as well.
+   */
+  @Setter
+  private IMeterCache meterCache;
 
-  private ConcurrentLinkedQueue<Payload<K>> queue = new ConcurrentLinkedQueue<>();
+  /**
+   * Not used with lanes, as those have their own ring buffers.
+   */
+  private volatile MpmcArrayQueue<Payload<K>> queue;
   private AtomicInteger queueSize = new AtomicInteger(0);
   private AtomicInteger concurrency = new AtomicInteger(0);
 
-  private AtomicBoolean stopRequested = new AtomicBoolean();
-  private AtomicBoolean started = new AtomicBoolean();
+  /**
+   * Presence of a key means, that a payload with that key is in the queue or being processed. Later payloads with the same key wait in here.
+   */
+  private ConcurrentHashMap<Object, OrderingKeyQueue<K>> orderingKeyQueues = new ConcurrentHashMap<>();
+  /**
+   * Payloads, which have not been taken for processing yet, by their coalescing key.
+   */
+  private ConcurrentHashMap<Object, Payload<K>> coalescingPayloads = new ConcurrentHashMap<>();
+
+  private ConcurrentLinkedQueue<Thread> idleWorkers = new ConcurrentLinkedQueue<>();
+  private ConcurrentLinkedQueue<Thread> waitingProducers = new ConcurrentLinkedQueue<>();
+  private volatile LaneStates<K> laneStates;
+  private volatile QueueDelayMonitor queueDelayMonitor;
+  private volatile OverflowSegments overflow;
+  private AtomicInteger overflowRefillRequests = new AtomicInteger();
+  private volatile TokenBucket rateLimitBucket;
+  private ConcurrentHashMap<Object, TokenBucket> keyRateLimitBuckets = new ConcurrentHashMap<>();
+  /**
+   * Payloads taken from the queue before the permit of their key was due.
+   */
+  private DelayQueue<RateDelayedPayload<K>> rateDelayedPayloads = new DelayQueue<>();
+  private AtomicLong keyRateLimitsSweepTimeNanos = new AtomicLong(System.nanoTime());
+  private AtomicInteger runningWorkers = new AtomicInteger(0);
+
+  private AtomicBoolean stopRequested = new AtomicBoolean();
+  /**
+   * If set, no more payloads are taken for processing after this time.
+   */
+  private volatile Long stopDeadlineNanos;
+  private volatile CompletableFuture<Void> stoppedFuture = new CompletableFuture<>();
+  /**
+   * Runs the processing tasks submitted by the dispatcher.
+   */
+  private volatile ExecutorService taskExecutorService;
+  private AtomicBoolean started = new AtomicBoolean();
+
+  private Lock genericLock = new ReentrantLock();
+  private Condition genericCondition = genericLock.newCondition();
+  private Runnable onStop;
+  private volatile DiscardingQueueProcessorMetrics metrics;
+
+  public DiscardingQueueProcessor(ExecutorService executorService, Consumer<Payload<K>> processor) {
+    this.executorService = executorService;
+    this.processor = processor;
+  }
+
+  /**
+   * Creates a processor, where either `processor` or `batchProcessor` has to be set before starting.
+   */
+  public DiscardingQueueProcessor(ExecutorService executorService) {
+    this(executorService, null);
+  }
+
+  public DiscardingQueueProcessor<T, K> setHardQueueLimit(int hardQueueLimit) {
+    genericLock.lock();
+    try {
+      MpmcArrayQueue<Payload<K>> queue = this.queue;
+      if (queue != null && hardQueueLimit > queue.capacity()) {
+        throw new IllegalStateException("Can not set hard queue limit. The queue is already allocated for " + queue.capacity() + " payloads.");
+      }
+      this.hardQueueLimit = hardQueueLimit;
+    } finally {
+      genericLock.unlock();
+    }
+    return this;
+  }
+
+  public ScheduleResult schedule(T data) {
+    return schedule(data, backpressurePolicy == BackpressurePolicy.BLOCK ? maxScheduleWait : Duration.ZERO);
+  }
+
+  /**
+   * Waits up to `maxWait` for the queue capacity to free up, instead of discarding the data on the hard queue limit.
+   *
+   * <p>The soft queue limit is still applied without waiting.
+   */
+  public ScheduleResult schedule(T data, Duration maxWait) {
+    return schedule(data, maxWait, null);
+  }
+
+  private ScheduleResult schedule(T data, Duration maxWait, AsyncPayload<K, ?> asyncPayload) {
+    DiscardingQueueProcessorMetrics metrics = this.metrics;
+
+    K transformedData = null;
+    Object coalescingKey = null;
+    // The future of an async payload can not be merged into another payload.
+    if (coalescingKeyExtractor != null && asyncPayload == null) {
+      // Transforming first, as a payload with already pending key does not need any capacity.
+      transformedData = transform(data);
+      coalescingKey = coalescingKeyExtractor.apply(transformedData);
+      if (coalescingKey != null && coalesce(coalescingKey, transformedData)) {
+        return onCoalesced();
+      }
+    }
+
+    LaneState<K> lane = null;
+    LaneStates<K> laneStates = this.laneStates;
+    if (laneStates != null) {
+      lane = laneStates.get(laneSelector.apply(data));
+    } else if (lanes != null) {
+      throw new IllegalStateException("Can not schedule. Lanes are set up, when the processor is started.");
+    }
+
+    OverflowSegments overflow = asyncPayload == null ? this.overflow : null;
+    DiscardReason discardReason;
+    if (isShed(data)) {
+      discardReason = DiscardReason.QUEUE_DELAY;
+    } else if (overflow != null && !overflow.isEmpty()) {
+      // Keeping the order behind the data already in the overflow.
+      discardReason = DiscardReason.HARD_LIMIT;
+    } else {
+      discardReason = reserveCapacity(data, lane);
+    }
+    if (discardReason == DiscardReason.HARD_LIMIT && overflow != null) {
+      return scheduleToOverflow(overflow, coalescingKeyExtractor == null ? transform(data) : transformedData);
+    }
+
+    Duration waitTime = Duration.ZERO;
+    if (isCapacityLimit(discardReason) && maxWait.compareTo(Duration.ZERO) > 0) {
+      long waitStartNanos = System.nanoTime();
+      discardReason = awaitCapacity(data, lane, waitStartNanos + maxWait.toNanos());
+      long waitTimeNanos = System.nanoTime() - waitStartNanos;
+      waitTime = Duration.ofNanos(waitTimeNanos);
+      if (metrics != null) {
+        metrics.registerScheduleWait(waitTimeNanos);
+      }
+    }
+    if (discardReason != null) {
+      if (metrics != null) {
+        metrics.registerDiscarded(discardReason);
+        if (lane != null) {
+          metrics.registerLaneDiscarded(lane.index, discardReason);
+        }
+      }
+      return new ScheduleResult().setScheduled(false).setDiscardReason(discardReason).setWaitTime(waitTime);
+    }
+
+    if (coalescingKeyExtractor == null) {
+      try {
+        transformedData = transform(data);
+      } catch (Throwable t) {
+        releaseCapacity(lane);
+        throw t;
+      }
+    }
+
+    Payload<K> payload;
+    if (asyncPayload == null) {
+      payload = new Payload<>();
+    } else {
+      payload = asyncPayload;
+      payload.setSchedulingTimeMillis(ClockHolder.getClock().millis());
+    }
+    payload.setData(transformedData);
+    if (lane != null) {
+      payload.setLane(lane.name);
+    }
+    if (coalescingKey != null && !registerCoalescingPayload(coalescingKey, payload)) {
+      // Another producer got its payload pending for the same key in the meanwhile.
+      releaseCapacity(lane);
+      return onCoalesced().setWaitTime(waitTime);
+    }
+    if (orderingKeyExtractor == null || isOrderingKeyHead(payload)) {
+      enqueue(payload);
+    }
+    if (metrics != null) {
+      metrics.registerScheduled();
+      if (lane != null) {
+        metrics.registerLaneScheduled(lane.index);
+      }
+    }
+
+    return new ScheduleResult().setScheduled(true).setWaitTime(waitTime);
+  }
+
+  /**
+   * The returned future completes after the payload has been processed by `processor` or `batchProcessor`.
+   */
+  public CompletableFuture<Void> scheduleAsync(T data) {
+    return scheduleAsync(data, null);
+  }
+
+  /**
+   * The payload is processed by the given function instead of `processor` and the returned future completes with its result.
+   *
+   * <p>The future completes exceptionally with `RejectedExecutionException` when the data is discarded, with `TimeoutException` when the
+   * payload times out in the queue, or with the processing error. Futures are completed by the processing thread, so dependent stages
+   * added without an executor run there as well.
+   */
+  public <R> CompletableFuture<R> scheduleAsync(T data, Function<? super K, R> function) {
+    if (function != null && batchProcessor != null) {
+      throw new IllegalStateException("Can not schedule. A function can not be used together with a batch processor.");
+    }
+    AsyncPayload<K, R> payload = new AsyncPayload<>(function);
+    ScheduleResult result = schedule(data, backpressurePolicy == BackpressurePolicy.BLOCK ? maxScheduleWait : Duration.ZERO, payload);
+    if (!result.isScheduled()) {
+      return CompletableFuture.failedFuture(new RejectedExecutionException("Data was discarded because of " + result.getDiscardReason() + "."));
+    }
+    return payload.future;
+  }
+
+  /**
+   * Parks the producer until capacity is released, the deadline passes or stop is requested.
+   */
+  private DiscardReason awaitCapacity(T data, LaneState<K> lane, long deadlineNanos) {
+    Thread thread = Thread.currentThread();
+    while (true) {
+      waitingProducers.add(thread);
+      try {
+        // Checking again, as capacity may have been released before we registered ourselves as waiting.
+        DiscardReason discardReason = reserveCapacity(data, lane);
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        if (!isCapacityLimit(discardReason) || remainingNanos <= 0 || stopRequested.get() || thread.isInterrupted()) {
+          return discardReason;
+        }
+        // A wake-up can get lost, when a producer woken up gives up at its deadline, so we recheck from time to time.
+        LockSupport.parkNanos(this, Math.min(remainingNanos, CAPACITY_RECHECK_INTERVAL_NS));
+      } finally {
+        waitingProducers.remove(thread);
+      }
+    }
+  }
+
+  private ScheduleResult scheduleToOverflow(OverflowSegments overflow, K data) {
+    DiscardingQueueProcessorMetrics metrics = this.metrics;
+    boolean appended = false;
+    try {
+      appended = overflow.append(ClockHolder.getClock().millis(), overflowCodec.encode(data));
+    } catch (Throwable t) {
+      onErrorRaw(t);
+    }
+    if (!appended) {
+      if (metrics != null) {
+        metrics.registerDiscarded(DiscardReason.HARD_LIMIT);
+      }
+      return new ScheduleResult().setScheduled(false).setDiscardReason(DiscardReason.HARD_LIMIT);
+    }
+
+    if (metrics != null) {
+      metrics.registerScheduled();
+      metrics.registerOverflowed();
+    }
+    // Capacity may have been released before the data got into the overflow.
+    refillFromOverflow();
+    return new ScheduleResult().setScheduled(true).setOverflowed(true);
+  }
+
+  /**
+   * Moves payloads from the overflow into the queue, while there is capacity.
+   *
+   * <p>Only one thread refills at a time. A refill requested in the meanwhile makes that thread go another round, so no request gets lost.
+   */
+  private void refillFromOverflow() {
+    OverflowSegments overflow = this.overflow;
+    if (overflow == null || overflow.isEmpty() || overflowRefillRequests.getAndIncrement() != 0) {
+      return;
+    }
+    int missedRequests = 1;
+    do {
+      while (!overflow.isEmpty() && reserveQueueCapacity()) {
+        Payload<K> payload = readFromOverflow(overflow);
+        if (payload == null) {
+          releaseCapacity(null);
+        } else if (orderingKeyExtractor == null || isOrderingKeyHead(payload)) {
+          enqueue(payload);
+        }
+      }
+      missedRequests = overflowRefillRequests.addAndGet(-missedRequests);
+    } while (missedRequests != 0);
+  }
+
+  /**
+   * Returns `null`, when there was nothing to read or the data could not be read.
+   */
+  private Payload<K> readFromOverflow(OverflowSegments overflow) {
+    OverflowSegments.OverflowRecord record;
+    try {
+      record = overflow.read();
+    } catch (Throwable t) {
+      // The rest of the overflow can not be trusted anymore.
+      this.overflow = null;
+      overflow.close();
+      onErrorRaw(t);
+      return null;
+    }
+    if (record == null) {
+      return null;
+    }
+    try {
+      Payload<K> payload = new Payload<>();
+      payload.setData(overflowCodec.decode(record.getData()));
+      payload.setSchedulingTimeMillis(record.getSchedulingTimeMillis());
+      return payload;
+    } catch (Throwable t) {
+      onErrorRaw(t);
+      return null;
+    }
+  }
+
+  private boolean isShed(T data) {
+    QueueDelayMonitor queueDelayMonitor = this.queueDelayMonitor;
+    return queueDelayMonitor != null && queueDelayMonitor.isOverloaded(ClockHolder.getClock().millis())
+        && (softLimitPredicate == null || Boolean.TRUE.equals(softLimitPredicate.test(data)));
+  }
+
+  private static boolean isCapacityLimit(DiscardReason discardReason) {
+    return discardReason == DiscardReason.HARD_LIMIT || discardReason == DiscardReason.LANE_LIMIT;
+  }
+
+  /**
+   * Gives back the capacity of a single payload, which did not make it into the queue.
+   */
+  private void releaseCapacity(LaneState<K> lane) {
+    if (lane != null) {
+      lane.size.decrementAndGet();
+    }
+    queueSize.decrementAndGet();
+    signalCapacityAvailable(1);
+  }
+
+  private void signalCapacityAvailable(int payloadsCount) {
+    for (int i = 0; i < payloadsCount; i++) {
+      Thread waitingProducer = waitingProducers.poll();
+      if (waitingProducer == null) {
+        return;
+      }
+      LockSupport.unpark(waitingProducer);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private K transform(T data) {
+    if (dataTransformer != null) {
+      return dataTransformer.apply(data);
+    }
+    return (K) data;
+  }
+
+  /**
+   * Returns `false`, if there is no pending payload with the given key.
+   */
+  private boolean coalesce(Object coalescingKey, K data) {
+    return coalescingPayloads.computeIfPresent(coalescingKey, (key, pendingPayload) -> {
+      pendingPayload.setData(coalescingMerger.apply(pendingPayload.getData(), data));
+      return pendingPayload;
+    }) != null;
+  }
+
+  /**
+   * Returns `false`, if the data was merged into another pending payload instead.
+   */
+  private boolean registerCoalescingPayload(Object coalescingKey, Payload<K> payload) {
+    return coalescingPayloads.compute(coalescingKey, (key, pendingPayload) -> {
+      if (pendingPayload == null) {
+        return payload;
+      }
+      pendingPayload.setData(coalescingMerger.apply(pendingPayload.getData(), payload.getData()));
+      return pendingPayload;
+    }) == payload;
+  }
+
+  /**
+   * Payload taken for processing can not be merged into anymore.
+   */
+  private void takeFromCoalescing(Payload<K> payload) {
+    if (coalescingKeyExtractor != null) {
+      Object coalescingKey = coalescingKeyExtractor.apply(payload.getData());
+      if (coalescingKey != null) {
+        // Removing under the map's lock also makes the last merged data visible for us.
+        coalescingPayloads.remove(coalescingKey, payload);
+      }
+    }
+  }
+
+  private ScheduleResult onCoalesced() {
+    DiscardingQueueProcessorMetrics metrics = this.metrics;
+    if (metrics != null) {
+      metrics.registerCoalesced();
+    }
+    return new ScheduleResult().setScheduled(true).setCoalesced(true);
+  }
+
+  public void start() {
+    if (processor == null && batchProcessor == null) {
+      throw new IllegalStateException("Can not start. Either processor or batch processor has to be set.");
+    }
+    if (maxBatchSize < 1) {
+      throw new IllegalStateException("Can not start. Max batch size has to be at least 1.");
+    }
+    if (meterCache != null && name == null) {
+      throw new IllegalStateException("Can not start. Name has to be set, when meter cache is set.");
+    }
+    if (lanes != null) {
+      validateLanes();
+    }
+    if (overflowCodec != null && lanes != null) {
+      throw new IllegalStateException("Can not start. Overflow can not be used together with lanes.");
+    }
+    if ((keyRateLimit == null) != (rateLimitKeyExtractor == null)) {
+      throw new IllegalStateException("Can not start. Key rate limit and rate limit key extractor have to be set together.");
+    }
+    if (!started.compareAndSet(false, true)) {
+      throw new IllegalStateException("Can not start. Already started.");
+    }
+    if (lanes != null && laneStates == null) {
+      laneStates = new LaneStates<>(lanes, hardQueueLimit);
+    }
+    if (overflowCodec != null && overflow == null) {
+      Path directory = overflowDirectory != null ? overflowDirectory : Path.of(System.getProperty("java.io.tmpdir"));
+      overflow = new OverflowSegments(directory, overflowSegmentBytes, maxOverflowBytes);
+    }
+    if (rateLimit != null && rateLimitBucket == null) {
+      rateLimitBucket = new TokenBucket(rateLimit, System.nanoTime());
+    }
+    if (sheddingTargetDelay != null) {
+      queueDelayMonitor = new QueueDelayMonitor(sheddingTargetDelay.toMillis(), sheddingInterval.toMillis());
+    }
+    if (meterCache != null) {
+      metrics = DiscardingQueueProcessorMetrics.of(meterCache, name, this, lanes);
+    }
+    if (lanes == null) {
+      getQueue();
+    }
+    stopDeadlineNanos = null;
+    if (stoppedFuture.isDone()) {
+      stoppedFuture = new CompletableFuture<>();
+    }
+    stopRequested.set(false);
+
+    taskExecutorService = executorService;
+    if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+      ExecutorService virtualThreadPerTaskExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+      if (virtualThreadPerTaskExecutor == null) {
+        log.warn("Virtual threads are not available, processor '{}' runs payloads on its executor service instead.", name);
+      } else {
+        taskExecutorService = virtualThreadPerTaskExecutor;
+      }
+    }
+
+    if (executionMode == ExecutionMode.WORKERS) {
+      int workersCount = Math.max(1, adaptiveConcurrencyLimit == null ? maxConcurrency : adaptiveConcurrencyLimit.getMaxLimit());
+      runningWorkers.set(workersCount);
+      for (int i = 0; i < workersCount; i++) {
+        int workerIndex = i;
+        executorService.submit(() -> runWorker(workerIndex));
+      }
+    } else {
+      executorService.submit(this::runDispatcher);
+    }
+  }
+
+  private void validateLanes() {
+    if (lanes.isEmpty()) {
+      throw new IllegalStateException("Can not start. At least one lane has to be defined.");
+    }
+    if (laneSelector == null) {
+      throw new IllegalStateException("Can not start. Lane selector has to be set, when lanes are defined.");
+    }
+    for (Lane lane : lanes) {
+      if (lane.getName() == null) {
+        throw new IllegalStateException("Can not start. Every lane has to have a name.");
+      }
+      if (lane.getWeight() < 1) {
+        throw new IllegalStateException("Can not start. Weight of lane '" + lane.getName() + "' has to be at least 1.");
+      }
+    }
+    if (lanes.stream().map(Lane::getName).distinct().count() != lanes.size()) {
+      throw new IllegalStateException("Can not start. Lane names have to be unique.");
+    }
+  }
+
+  private void runDispatcher() {
+    AtomicBoolean shouldStop = new AtomicBoolean();
+    while (!shouldStop.get()) {
+      genericLock.lock();
+      try {
+        long waitNanos = nanosUntilDispatchable();
+        while (waitNanos > 0 && !canStop()) {
+          long ignored = genericCondition.awaitNanos(waitNanos);
+          waitNanos = nanosUntilDispatchable();
+        }
+
+        if (waitNanos > 0 && canStop()) {
+          shouldStop.set(true);
+          continue;
+        }
+        while (concurrency.get() >= getConcurrencyLimit()) {
+          boolean ignored = genericCondition.await(SMALL_TIME_INTERVAL_S, TimeUnit.SECONDS);
+        }
+
+        Payload<K> payload = pollDispatchable();
+        if (payload == null) {
+          continue;
+        }
+
+        concurrency.incrementAndGet();
+        if (batchProcessor == null) {
+          taskExecutorService.submit(() -> {
+            process(payload);
+            releaseKeys(payload);
+            release(1, true);
+          });
+        } else {
+          List<Payload<K>> batch = collectBatch(payload);
+          taskExecutorService.submit(() -> {
+            processBatch(batch);
+            batch.forEach(this::releaseKeys);
+            release(batch.size(), true);
+          });
+        }
+      } catch (Throwable t) {
+        onErrorRaw(t);
+      } finally {
+        genericLock.unlock();
+      }
+    }
+    onStopped();
+  }
+
+  /**
+   * Long-lived worker loop, taking payloads directly from the queue.
+   *
+   * <p>Idle workers register themselves in `idleWorkers` and park. Producers unpark one idle worker per scheduled payload.
+   */
+  private void runWorker(int workerIndex) {
+    try {
+      while (true) {
+        try {
+          if (workerIndex >= getConcurrencyLimit()) {
+            if (canStop()) {
+              break;
+            }
+            LockSupport.parkNanos(this, CONCURRENCY_LIMIT_RECHECK_INTERVAL_NS);
+            continue;
+          }
+
+          Payload<K> payload = pollOrPark(SMALL_TIME_INTERVAL_NS);
+          if (payload == null) {
+            if (canStop()) {
+              break;
+            }
+            continue;
+          }
+
+          concurrency.incrementAndGet();
+          if (batchProcessor == null) {
+            process(payload);
+            releaseKeys(payload);
+            release(1, true);
+          } else {
+            List<Payload<K>> batch = drainBatch(payload);
+            processBatch(batch);
+            batch.forEach(this::releaseKeys);
+            release(batch.size(), true);
+          }
+        } catch (Throwable t) {
+          onErrorRaw(t);
+        }
+      }
+    } finally {
+      if (runningWorkers.decrementAndGet() == 0) {
+        onStopped();
+      }
+    }
+  }
+
+  /**
+   * Returns `null`, if no payload became available during the park time or stop was requested.
+   */
+  private Payload<K> pollOrPark(long parkNanos) {
+    Payload<K> payload = pollDispatchable();
+    if (payload != null || parkNanos <= 0) {
+      return payload;
+    }
+
+    Thread thread = Thread.currentThread();
+    idleWorkers.add(thread);
+    try {
+      // Checking again, as a producer may have added a payload before we registered ourselves as idle.
+      payload = pollDispatchable();
+      if (payload == null && !canStop()) {
+        LockSupport.parkNanos(this, Math.min(parkNanos, nanosUntilDispatchable()));
+        payload = pollDispatchable();
+      }
+      return payload;
+    } finally {
+      idleWorkers.remove(thread);
+    }
+  }
+
+  /**
+   * Hands over timed out payloads at the head of the queue, without those taking any concurrency.
+   *
+   * <p>Returns the first payload, which has not timed out, or `null`.
+   */
+  private Payload<K> expireStale(Payload<K> payload) {
+    if (payload == null || !isTimedOut(payload)) {
+      return payload;
+    }
+
+    List<Payload<K>> expiredPayloads = new ArrayList<>();
+    while (payload != null && isTimedOut(payload)) {
+      expiredPayloads.add(payload);
+      payload = expiredPayloads.size() < expiredPayloadsSweepLimit ? pollPayload() : null;
+    }
+
+    onExpired(expiredPayloads);
+    return payload;
+  }
+
+  private void onExpired(List<Payload<K>> expiredPayloads) {
+    if (executionMode == ExecutionMode.WORKERS) {
+      expire(expiredPayloads);
+    } else {
+      executorService.submit(() -> expire(expiredPayloads));
+    }
+  }
+
+  /**
+   * Takes the next payload allowed by the rate limits, handing over timed out payloads on the way.
+   *
+   * <p>Returns `null`, when there is no such payload or no permit is available at the moment.
+   */
+  private Payload<K> pollDispatchable() {
+    if (isStopDeadlinePassed()) {
+      return null;
+    }
+    TokenBucket rateLimitBucket = this.rateLimitBucket;
+    if (rateLimitBucket == null && keyRateLimit == null) {
+      return expireStale(pollPayload());
+    }
+
+    long nowNanos = System.nanoTime();
+    if (rateLimitBucket != null && rateLimitBucket.tryAcquire(nowNanos) > 0) {
+      return null;
+    }
+    Payload<K> payload = keyRateLimit == null ? expireStale(pollPayload()) : pollKeyRateLimited(nowNanos);
+    if (payload == null && rateLimitBucket != null) {
+      rateLimitBucket.release();
+    }
+    return payload;
+  }
+
+  /**
+   * Payloads, which are over the rate of their key, are put aside until their permit is due.
+   */
+  private Payload<K> pollKeyRateLimited(long nowNanos) {
+    sweepKeyRateLimitBuckets(nowNanos);
+
+    RateDelayedPayload<K> rateDelayedPayload = rateDelayedPayloads.poll();
+    if (rateDelayedPayload != null) {
+      if (!isTimedOut(rateDelayedPayload.payload)) {
+        return rateDelayedPayload.payload;
+      }
+      onExpired(Collections.singletonList(rateDelayedPayload.payload));
+    }
+
+    while (true) {
+      Payload<K> payload = expireStale(pollPayload());
+      if (payload == null) {
+        return null;
+      }
+      long delayNanos = reserveKeyPermit(payload, nowNanos);
+      if (delayNanos <= 0) {
+        return payload;
+      }
+      rateDelayedPayloads.add(new RateDelayedPayload<>(payload, nowNanos + delayNanos));
+    }
+  }
+
+  private long reserveKeyPermit(Payload<K> payload, long nowNanos) {
+    Object key = rateLimitKeyExtractor.apply(payload.getData());
+    if (key == null) {
+      return 0;
+    }
+    long[] delayNanos = new long[1];
+    keyRateLimitBuckets.compute(key, (k, bucket) -> {
+      TokenBucket keyBucket = bucket == null ? new TokenBucket(keyRateLimit, nowNanos) : bucket;
+      delayNanos[0] = keyBucket.reserve(nowNanos);
+      return keyBucket;
+    });
+    return delayNanos[0];
+  }
+
+  /**
+   * Drops the buckets of keys, which have been idle long enough to get full again.
+   */
+  private void sweepKeyRateLimitBuckets(long nowNanos) {
+    long sweepTimeNanos = keyRateLimitsSweepTimeNanos.get();
+    if (nowNanos - sweepTimeNanos < KEY_RATE_LIMITS_SWEEP_INTERVAL_NS || !keyRateLimitsSweepTimeNanos.compareAndSet(sweepTimeNanos, nowNanos)) {
+      return;
+    }
+    for (Object key : keyRateLimitBuckets.keySet()) {
+      keyRateLimitBuckets.computeIfPresent(key, (k, bucket) -> bucket.isFull(nowNanos) ? null : bucket);
+    }
+  }
+
+  /**
+   * Returns 0, when `pollDispatchable` may have a payload right away.
+   */
+  private long nanosUntilDispatchable() {
+    long nowNanos = System.nanoTime();
+    long waitNanos = SMALL_TIME_INTERVAL_NS;
+    if (peekPayload() != null) {
+      waitNanos = 0;
+    } else {
+      RateDelayedPayload<K> rateDelayedPayload = rateDelayedPayloads.peek();
+      if (rateDelayedPayload != null) {
+        waitNanos = Math.max(0, Math.min(waitNanos, rateDelayedPayload.dueTimeNanos - nowNanos));
+      }
+    }
+    TokenBucket rateLimitBucket = this.rateLimitBucket;
+    if (rateLimitBucket != null && waitNanos < SMALL_TIME_INTERVAL_NS) {
+      waitNanos = Math.max(waitNanos, rateLimitBucket.nanosUntilPermit(nowNanos));
+    }
+    Long stopDeadlineNanos = this.stopDeadlineNanos;
+    if (stopDeadlineNanos != null) {
+      // Nothing is taken after the deadline, but we need to wake up at it.
+      long remainingNanos = stopDeadlineNanos - nowNanos;
+      waitNanos = remainingNanos <= 0 ? SMALL_TIME_INTERVAL_NS : Math.min(waitNanos, remainingNanos);
+    }
+    return waitNanos;
+  }
+
+  private boolean isStopDeadlinePassed() {
+    Long stopDeadlineNanos = this.stopDeadlineNanos;
+    return stopDeadlineNanos != null && System.nanoTime() - stopDeadlineNanos >= 0;
+  }
+
+  private void expire(List<Payload<K>> expiredPayloads) {
+    expiredPayloads.forEach(this::takeFromCoalescing);
+    expiredPayloads.forEach(this::registerQueueTime);
+    onTimeouts(expiredPayloads);
+    expiredPayloads.forEach(this::releaseKeys);
+    release(expiredPayloads.size(), false);
+  }
+
+  /**
+   * Stopping is possible, when stop was requested and all payloads have been processed.
+   *
+   * <p>Payloads in progress have to be waited for, as those can release further payloads waiting behind the same ordering key.
+   *
+   * <p>After the stop deadline, only the payloads in progress are waited for.
+   */
+  private boolean canStop() {
+    if (!stopRequested.get()) {
+      return false;
+    }
+    if (isStopDeadlinePassed()) {
+      return concurrency.get() == 0;
+    }
+    OverflowSegments overflow = this.overflow;
+    return queueSize.get() == 0 && (overflow == null || overflow.isEmpty());
+  }
+
+  private void enqueue(Payload<K> payload) {
+    // Can not fail, as the queue size, checked when scheduling, includes all payloads in the queue.
+    LaneStates<K> laneStates = this.laneStates;
+    boolean added = laneStates == null ? getQueue().offer(payload) : laneStates.get(payload.getLane()).queue.offer(payload);
+    Preconditions.checkState(added, "Queue is full.");
+    signalWorkAvailable();
+  }
+
+  /**
+   * Returns `false`, when an earlier payload with the same ordering key is still pending, and the payload was put to wait behind it.
+   */
+  private boolean isOrderingKeyHead(Payload<K> payload) {
+    Object key = orderingKeyExtractor.apply(payload.getData());
+    if (key == null) {
+      return true;
+    }
+    OrderingKeyQueue<K> newKeyQueue = new OrderingKeyQueue<>(payload);
+    OrderingKeyQueue<K> keyQueue = orderingKeyQueues.compute(key, (k, existing) -> {
+      if (existing == null) {
+        return newKeyQueue;
+      }
+      existing.addWaiting(payload);
+      return existing;
+    });
+    return keyQueue == newKeyQueue;
+  }
+
+  private Payload<K> pollPayload() {
+    LaneStates<K> laneStates = this.laneStates;
+    if (laneStates != null) {
+      return laneStates.poll();
+    }
+    MpmcArrayQueue<Payload<K>> queue = this.queue;
+    return queue == null ? null : queue.poll();
+  }
 
-  private Lock genericLock = new ReentrantLock();
-  private Condition genericCondition = genericLock.newCondition();
-  private Runnable onStop;
+  private Payload<K> peekPayload() {
+    LaneStates<K> laneStates = this.laneStates;
+    if (laneStates != null) {
+      return laneStates.peek();
+    }
+    MpmcArrayQueue<Payload<K>> queue = this.queue;
+    return queue == null ? null : queue.peek();
+  }
 
-  public DiscardingQueueProcessor(ExecutorService executorService, Consumer<Payload<K>> processor) {
-    this.executorService = executorService;
-    this.processor = processor;
+  /**
+   * Releases the lane capacity and the ordering key of a payload, which has left the processor.
+   */
+  private void releaseKeys(Payload<K> payload) {
+    LaneStates<K> laneStates = this.laneStates;
+    if (laneStates != null) {
+      laneStates.get(payload.getLane()).size.decrementAndGet();
+    }
+    releaseOrderingKey(payload);
   }
 
-  @SuppressWarnings("unchecked")
-  public ScheduleResult schedule(T data) {
-    genericLock.lock();
+  /**
+   * Moves the next payload waiting behind the same ordering key into the queue.
+   */
+  private void releaseOrderingKey(Payload<K> payload) {
+    if (orderingKeyExtractor == null) {
+      return;
+    }
     try {
-      if (queueSize.get() >= hardQueueLimit) {
-        return new ScheduleResult().setScheduled(false).setDiscardReason(DiscardReason.HARD_LIMIT);
-      } else if (queueSize.get() >= softQueueLimit) {
-        if (softLimitPredicate != null && Boolean.TRUE.equals(softLimitPredicate.test(data))) {
-          return new ScheduleResult().setScheduled(false).setDiscardReason(DiscardReason.SOFT_LIMIT);
+      Object key = orderingKeyExtractor.apply(payload.getData());
+      if (key == null) {
+        return;
+      }
+      OrderingKeyQueue<K> keyQueue = orderingKeyQueues.computeIfPresent(key, (k, existing) -> existing.promoteNext() ? existing : null);
+      if (keyQueue != null) {
+        // The new head can not be released before it gets into the queue, so it is safe to read outside of the compute.
+        enqueue(keyQueue.head);
+      }
+    } catch (Throwable t) {
+      onErrorRaw(t);
+    }
+  }
+
+  private DiscardReason reserveCapacity(T data, LaneState<K> lane) {
+    if (lane != null && !lane.tryReserve()) {
+      return DiscardReason.LANE_LIMIT;
+    }
+    DiscardReason discardReason = reserveQueueCapacity(data);
+    if (discardReason != null && lane != null) {
+      lane.size.decrementAndGet();
+    }
+    return discardReason;
+  }
+
+  /**
+   * The ring buffer is allocated only once, so producers offering into it concurrently can not lose payloads.
+   */
+  private MpmcArrayQueue<Payload<K>> getQueue() {
+    MpmcArrayQueue<Payload<K>> queue = this.queue;
+    if (queue == null) {
+      genericLock.lock();
+      try {
+        queue = this.queue;
+        if (queue == null) {
+          queue = new MpmcArrayQueue<>(hardQueueLimit);
+          this.queue = queue;
         }
+      } finally {
+        genericLock.unlock();
       }
+    }
+    return queue;
+  }
 
-      K transformedData;
-      if (dataTransformer != null) {
-        transformedData = dataTransformer.apply(data);
-      } else {
-        transformedData = (K) data;
+  /**
+   * Reserves queue capacity without applying the soft limit.
+   */
+  private boolean reserveQueueCapacity() {
+    while (true) {
+      int currentQueueSize = queueSize.get();
+      if (currentQueueSize >= hardQueueLimit) {
+        return false;
+      }
+      if (queueSize.compareAndSet(currentQueueSize, currentQueueSize + 1)) {
+        return true;
       }
+    }
+  }
 
-      queueSize.incrementAndGet();
-      Payload<K> payload = new Payload<>();
-      payload.setData(transformedData);
-      queue.add(payload);
-      genericCondition.signalAll();
+  private DiscardReason reserveQueueCapacity(T data) {
+    Boolean softLimitApplies = null;
+    while (true) {
+      int currentQueueSize = queueSize.get();
+      if (currentQueueSize >= hardQueueLimit) {
+        return DiscardReason.HARD_LIMIT;
+      } else if (currentQueueSize >= softQueueLimit) {
+        if (softLimitApplies == null) {
+          softLimitApplies = softLimitPredicate != null && Boolean.TRUE.equals(softLimitPredicate.test(data));
+        }
+        if (softLimitApplies) {
+          return DiscardReason.SOFT_LIMIT;
+        }
+      }
+      if (queueSize.compareAndSet(currentQueueSize, currentQueueSize + 1)) {
+        return null;
+      }
+    }
+  }
 
-      return new ScheduleResult().setScheduled(true);
-    } finally {
-      genericLock.unlock();
+  private void signalWorkAvailable() {
+    if (executionMode == ExecutionMode.WORKERS) {
+      Thread idleWorker = idleWorkers.poll();
+      if (idleWorker != null) {
+        LockSupport.unpark(idleWorker);
+      }
+    } else {
+      genericLock.lock();
+      try {
+        genericCondition.signalAll();
+      } finally {
+        genericLock.unlock();
+      }
     }
   }
 
-  public void start() {
-    if (!started.compareAndSet(false, true)) {
-      throw new IllegalStateException("Can not start. Already started.");
+  private void wakeUpIdleWorkers() {
+    for (Thread idleWorker : idleWorkers) {
+      LockSupport.unpark(idleWorker);
     }
-    stopRequested.set(false);
-    executorService.submit(() -> {
-      AtomicBoolean shouldStop = new AtomicBoolean();
-      while (!shouldStop.get()) {
-        genericLock.lock();
-        try {
-          while (queue.peek() == null && !stopRequested.get()) {
-            boolean ignored = genericCondition.await(SMALL_TIME_INTERVAL_S, TimeUnit.SECONDS);
-          }
+  }
 
-          Payload<K> payload = queue.poll();
+  private void onStopped() {
+    if (onStop != null) {
+      try {
+        onStop.run();
+      } catch (Throwable t) {
+        onErrorRaw(t);
+      }
+    }
+    // Data left over by the stop deadline stays available for `drainTo`.
+    closeOverflowIfEmpty();
+    ExecutorService taskExecutorService = this.taskExecutorService;
+    if (taskExecutorService != null && taskExecutorService != executorService) {
+      // Processing tasks have all finished by now.
+      taskExecutorService.shutdown();
+    }
+    started.set(false);
+    stoppedFuture.complete(null);
+  }
 
-          if (payload == null && stopRequested.get()) {
-            shouldStop.set(true);
-            return;
-          }
-          while (concurrency.get() >= maxConcurrency) {
-            boolean ignored = genericCondition.await(SMALL_TIME_INTERVAL_S, TimeUnit.SECONDS);
-          }
+  private void closeOverflowIfEmpty() {
+    OverflowSegments overflow = this.overflow;
+    // Producers still holding on to the closed overflow get their data discarded.
+    if (overflow != null && overflow.closeIfEmpty()) {
+      this.overflow = null;
+    }
+  }
 
-          concurrency.incrementAndGet();
-          executorService.submit(() -> {
-            try {
-              if (queueTimeout != null && ClockHolder.getClock().millis() - payload.getSchedulingTimeMillis() > queueTimeout.toMillis()) {
-                if (timeoutsHander != null) {
-                  timeoutsHander.accept(payload);
-                }
-              } else {
-                processor.accept(payload);
-              }
-            } catch (Throwable t) {
-              onErrorRaw(t);
-            }
+  private void process(Payload<K> payload) {
+    takeFromCoalescing(payload);
+    registerQueueTime(payload);
+    if (isTimedOut(payload)) {
+      onTimeouts(Collections.singletonList(payload));
+      return;
+    }
 
-            genericLock.lock();
-            try {
-              queueSize.decrementAndGet();
-              concurrency.decrementAndGet();
-              genericCondition.signalAll();
-            } finally {
-              genericLock.unlock();
-            }
-          });
-        } catch (Throwable t) {
-          onErrorRaw(t);
-        } finally {
-          genericLock.unlock();
+    long startTimeNanos = System.nanoTime();
+    Object result = null;
+    Throwable error = null;
+    try {
+      if (payload instanceof AsyncPayload) {
+        result = ((AsyncPayload<K, ?>) payload).process(processor);
+      } else {
+        processor.accept(payload);
+      }
+    } catch (Throwable t) {
+      error = t;
+    }
+    onProcessed(System.nanoTime() - startTimeNanos, error != null);
+
+    if (payload instanceof AsyncPayload) {
+      ((AsyncPayload<K, ?>) payload).complete(result, error);
+    } else if (error != null) {
+      onErrorRaw(error);
+    }
+  }
+
+  private void processBatch(List<Payload<K>> batch) {
+    batch.forEach(this::takeFromCoalescing);
+    batch.forEach(this::registerQueueTime);
+    List<Payload<K>> validPayloads = batch;
+    if (queueTimeout != null) {
+      validPayloads = new ArrayList<>(batch.size());
+      List<Payload<K>> expiredPayloads = new ArrayList<>();
+      for (Payload<K> payload : batch) {
+        if (isTimedOut(payload)) {
+          expiredPayloads.add(payload);
+        } else {
+          validPayloads.add(payload);
+        }
+      }
+      if (!expiredPayloads.isEmpty()) {
+        onTimeouts(expiredPayloads);
+      }
+    }
+
+    if (!validPayloads.isEmpty()) {
+      long startTimeNanos = System.nanoTime();
+      Throwable error = null;
+      try {
+        batchProcessor.accept(validPayloads);
+      } catch (Throwable t) {
+        error = t;
+        onErrorRaw(t);
+      }
+      onProcessed(System.nanoTime() - startTimeNanos, error != null);
+
+      for (Payload<K> payload : validPayloads) {
+        if (payload instanceof AsyncPayload) {
+          ((AsyncPayload<K, ?>) payload).complete(null, error);
         }
       }
-      if (onStop != null) {
+    }
+  }
+
+  private void registerQueueTime(Payload<K> payload) {
+    DiscardingQueueProcessorMetrics metrics = this.metrics;
+    QueueDelayMonitor queueDelayMonitor = this.queueDelayMonitor;
+    if (metrics == null && queueDelayMonitor == null) {
+      return;
+    }
+    long nowMillis = ClockHolder.getClock().millis();
+    long queueTimeMillis = nowMillis - payload.getSchedulingTimeMillis();
+    if (metrics != null) {
+      metrics.registerQueueTime(queueTimeMillis);
+    }
+    if (queueDelayMonitor != null) {
+      queueDelayMonitor.onTaken(queueTimeMillis, nowMillis);
+    }
+  }
+
+  private void onProcessed(long processingTimeNanos, boolean failed) {
+    DiscardingQueueProcessorMetrics metrics = this.metrics;
+    if (metrics != null) {
+      metrics.registerProcessing(processingTimeNanos, failed);
+    }
+    if (adaptiveConcurrencyLimit != null) {
+      try {
+        adaptiveConcurrencyLimit.onSample(processingTimeNanos, concurrency.get(), failed);
+      } catch (Throwable t) {
+        onErrorRaw(t);
+      }
+    }
+  }
+
+  /**
+   * Drains already queued payloads into the batch and waits up to `maxLinger` for more to arrive.
+   *
+   * <p>Has to be called while holding the `genericLock`.
+   */
+  private List<Payload<K>> collectBatch(Payload<K> firstPayload) throws InterruptedException {
+    List<Payload<K>> batch = new ArrayList<>(Math.min(maxBatchSize, queueSize.get()));
+    batch.add(firstPayload);
+
+    long lingerDeadlineNanos = System.nanoTime() + maxLinger.toNanos();
+    while (batch.size() < maxBatchSize) {
+      Payload<K> payload = pollDispatchable();
+      if (payload != null) {
+        batch.add(payload);
+        continue;
+      }
+      long remainingNanos = lingerDeadlineNanos - System.nanoTime();
+      if (remainingNanos <= 0 || stopRequested.get()) {
+        break;
+      }
+      long ignored = genericCondition.awaitNanos(Math.max(1, Math.min(remainingNanos, nanosUntilDispatchable())));
+    }
+    return batch;
+  }
+
+  /**
+   * Worker mode counterpart of `collectBatch`, parking instead of waiting on the `genericCondition`.
+   */
+  private List<Payload<K>> drainBatch(Payload<K> firstPayload) {
+    List<Payload<K>> batch = new ArrayList<>(Math.min(maxBatchSize, queueSize.get()));
+    batch.add(firstPayload);
+
+    long lingerDeadlineNanos = System.nanoTime() + maxLinger.toNanos();
+    while (batch.size() < maxBatchSize) {
+      long remainingNanos = lingerDeadlineNanos - System.nanoTime();
+      Payload<K> payload = pollOrPark(remainingNanos);
+      if (payload != null) {
+        batch.add(payload);
+      } else if (remainingNanos <= 0 || stopRequested.get()) {
+        break;
+      }
+    }
+    return batch;
+  }
+
+  private boolean isTimedOut(Payload<K> payload) {
+    return queueTimeout != null && ClockHolder.getClock().millis() - payload.getSchedulingTimeMillis() > queueTimeout.toMillis();
+  }
+
+  private void onTimeouts(List<Payload<K>> payloads) {
+    DiscardingQueueProcessorMetrics metrics = this.metrics;
+    if (metrics != null) {
+      metrics.registerTimedOut(payloads.size());
+    }
+    for (Payload<K> payload : payloads) {
+      if (payload instanceof AsyncPayload) {
+        ((AsyncPayload<K, ?>) payload).complete(null, new TimeoutException("Payload timed out in the queue."));
+      }
+    }
+    if (batchTimeoutsHandler != null) {
+      try {
+        batchTimeoutsHandler.accept(payloads);
+      } catch (Throwable t) {
+        onErrorRaw(t);
+      }
+    } else if (timeoutsHander != null) {
+      for (Payload<K> payload : payloads) {
         try {
-          onStop.run();
+          timeoutsHander.accept(payload);
         } catch (Throwable t) {
           onErrorRaw(t);
         }
       }
-      started.set(false);
-    });
+    }
+  }
+
+  private void release(int payloadsCount, boolean releaseConcurrency) {
+    if (executionMode == ExecutionMode.WORKERS) {
+      int newQueueSize = queueSize.addAndGet(-payloadsCount);
+      if (releaseConcurrency) {
+        concurrency.decrementAndGet();
+      }
+      if (stopRequested.get() && (newQueueSize == 0 || isStopDeadlinePassed())) {
+        wakeUpIdleWorkers();
+      }
+      signalCapacityAvailable(payloadsCount);
+      refillFromOverflow();
+      return;
+    }
+    genericLock.lock();
+    try {
+      queueSize.addAndGet(-payloadsCount);
+      if (releaseConcurrency) {
+        concurrency.decrementAndGet();
+      }
+      genericCondition.signalAll();
+    } finally {
+      genericLock.unlock();
+    }
+    signalCapacityAvailable(payloadsCount);
+    refillFromOverflow();
   }
 
   protected void onErrorRaw(Throwable t) {
@@ -199,12 +1440,72 @@ public class DiscardingQueueProcessor<T, K> {
     } finally {
       genericLock.unlock();
     }
+    wakeUpIdleWorkers();
+    for (Thread waitingProducer : waitingProducers) {
+      LockSupport.unpark(waitingProducer);
+    }
+  }
+
+  /**
+   * Keeps processing payloads in parallel until the deadline, and then stops taking any more payloads from the queue.
+   *
+   * <p>Payloads in progress are still waited for. Payloads left in the queue can be taken out with `drainTo`.
+   *
+   * @return future, completing when the processor has fully stopped.
+   */
+  public CompletableFuture<Void> stop(Duration deadline) {
+    stopDeadlineNanos = System.nanoTime() + deadline.toNanos();
+    stop();
+    return stoppedFuture;
+  }
+
+  /**
+   * Completes when the processor has fully stopped, after the `onStop` callback has been run.
+   */
+  public CompletableFuture<Void> getStoppedFuture() {
+    return stoppedFuture;
+  }
+
+  /**
+   * Moves the data, which has not been taken for processing, to the given collection. Returns the number of moved elements.
+   *
+   * <p>Meant for persisting the leftovers, after the processor has been stopped with a deadline. Data from the overflow is included. Futures of
+   * `scheduleAsync` payloads complete with `CancellationException`.
+   */
+  public int drainTo(Collection<? super K> collection) {
+    int drainedCount = 0;
+    while (true) {
+      Payload<K> payload = pollPayload();
+      if (payload == null) {
+        RateDelayedPayload<K> rateDelayedPayload = rateDelayedPayloads.peek();
+        if (rateDelayedPayload != null && rateDelayedPayloads.remove(rateDelayedPayload)) {
+          payload = rateDelayedPayload.payload;
+        }
+      }
+      if (payload == null) {
+        break;
+      }
+
+      takeFromCoalescing(payload);
+      collection.add(payload.getData());
+      drainedCount++;
+      if (payload instanceof AsyncPayload) {
+        ((AsyncPayload<K, ?>) payload).complete(null, new CancellationException("Payload was drained from the queue."));
+      }
+      // Releasing moves the next payloads of the same ordering key and from the overflow into the queue.
+      releaseKeys(payload);
+      release(1, false);
+    }
+    if (!started.get()) {
+      closeOverflowIfEmpty();
+    }
+    return drainedCount;
   }
 
   public boolean hasStopped() {
     genericLock.lock();
     try {
-      return stopRequested.get() && queueSize.get() == 0;
+      return canStop();
     } finally {
       genericLock.unlock();
     }
@@ -218,17 +1519,279 @@ public class DiscardingQueueProcessor<T, K> {
     return concurrency.get();
   }
 
+  /**
+   * Current maximum concurrency, which changes at runtime when `adaptiveConcurrencyLimit` is set.
+   */
+  public int getConcurrencyLimit() {
+    return adaptiveConcurrencyLimit == null ? maxConcurrency : adaptiveConcurrencyLimit.getLimit();
+  }
+
+  /**
+   * Number of payloads waiting in the overflow.
+   */
+  public long getOverflowSize() {
+    OverflowSegments overflow = this.overflow;
+    return overflow == null ? 0 : overflow.getRecordsCount();
+  }
+
+  /**
+   * Number of payloads in the lane, including the ones being processed. Returns 0, when lanes have not been set up.
+   */
+  public int getLaneQueueSize(String lane) {
+    LaneStates<K> laneStates = this.laneStates;
+    return laneStates == null ? 0 : laneStates.get(lane).size.get();
+  }
+
   @Data
   @Accessors(chain = true)
   public static class Payload<PT> {
 
     private PT data;
     private long schedulingTimeMillis = ClockHolder.getClock().millis();
+    /**
+     * Name of the lane, when lanes are defined.
+     */
+    private String lane;
+  }
+
+  @Data
+  @Accessors(chain = true)
+  public static class Lane {
+
+    private String name;
+    /**
+     * Relative share of processing, when other lanes have payloads as well.
+     */
+    private int weight = 1;
+    /**
+     * Maximum number of payloads in the lane, including the ones being processed. Only the hard queue limit applies, when not positive.
+     */
+    private int queueLimit;
+  }
+
+  private static class LaneState<PT> {
+
+    private final int index;
+    private final String name;
+    private final int limit;
+    private final MpmcArrayQueue<Payload<PT>> queue;
+    private final AtomicInteger size = new AtomicInteger();
+
+    LaneState(int index, Lane lane, int hardQueueLimit) {
+      this.index = index;
+      this.name = lane.getName();
+      this.limit = lane.getQueueLimit() > 0 ? Math.min(lane.getQueueLimit(), hardQueueLimit) : hardQueueLimit;
+      this.queue = new MpmcArrayQueue<>(limit);
+    }
+
+    private boolean tryReserve() {
+      while (true) {
+        int currentSize = size.get();
+        if (currentSize >= limit) {
+          return false;
+        }
+        if (size.compareAndSet(currentSize, currentSize + 1)) {
+          return true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Lanes are served in a smooth weighted round-robin order, so a lane with a larger weight is not served in long bursts.
+   */
+  private static class LaneStates<PT> {
+
+    private final List<LaneState<PT>> states = new ArrayList<>();
+    private final Map<String, LaneState<PT>> statesByName = new HashMap<>();
+    private final int[] schedule;
+    private final AtomicInteger ticket = new AtomicInteger();
+
+    LaneStates(List<Lane> lanes, int hardQueueLimit) {
+      for (Lane lane : lanes) {
+        LaneState<PT> state = new LaneState<>(states.size(), lane, hardQueueLimit);
+        states.add(state);
+        statesByName.put(state.name, state);
+      }
+
+      int totalWeight = lanes.stream().mapToInt(Lane::getWeight).sum();
+      int[] currentWeights = new int[lanes.size()];
+      schedule = new int[totalWeight];
+      for (int i = 0; i < totalWeight; i++) {
+        int selected = 0;
+        for (int j = 0; j < lanes.size(); j++) {
+          currentWeights[j] += lanes.get(j).getWeight();
+          if (currentWeights[j] > currentWeights[selected]) {
+            selected = j;
+          }
+        }
+        currentWeights[selected] -= totalWeight;
+        schedule[i] = selected;
+      }
+    }
+
+    private LaneState<PT> get(String name) {
+      if (name == null) {
+        return states.get(0);
+      }
+      LaneState<PT> state = statesByName.get(name);
+      if (state == null) {
+        throw new IllegalArgumentException("Lane '" + name + "' is not defined.");
+      }
+      return state;
+    }
+
+    private Payload<PT> poll() {
+      int position = (ticket.getAndIncrement() & Integer.MAX_VALUE) % schedule.length;
+      Payload<PT> payload = states.get(schedule[position]).queue.poll();
+      if (payload != null) {
+        return payload;
+      }
+      // Not wasting the turn, when the scheduled lane is empty.
+      for (LaneState<PT> state : states) {
+        payload = state.queue.poll();
+        if (payload != null) {
+          return payload;
+        }
+      }
+      return null;
+    }
+
+    private Payload<PT> peek() {
+      for (LaneState<PT> state : states) {
+        Payload<PT> payload = state.queue.peek();
+        if (payload != null) {
+          return payload;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Payload scheduled with `scheduleAsync`, carrying the future to complete.
+   *
+   * <p>Future and function are not part of the payload's equality.
+   */
+  @SuppressFBWarnings("EQ_DOESNT_OVERRIDE_EQUALS")
+  private static class AsyncPayload<PT, R> extends Payload<PT> {
+
+    private final Function<? super PT, R> function;
+    private final CompletableFuture<R> future = new CompletableFuture<>();
+
+    AsyncPayload(Function<? super PT, R> function) {
+      this.function = function;
+    }
+
+    private Object process(Consumer<Payload<PT>> processor) {
+      if (function == null) {
+        processor.accept(this);
+        return null;
+      }
+      return function.apply(getData());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete(Object result, Throwable error) {
+      if (error != null) {
+        future.completeExceptionally(error);
+      } else {
+        future.complete((R) result);
+      }
+    }
+  }
+
+  @SuppressFBWarnings("EQ_COMPARETO_USE_OBJECT_EQUALS")
+  private static class RateDelayedPayload<PT> implements Delayed {
+
+    private final Payload<PT> payload;
+    private final long dueTimeNanos;
+
+    RateDelayedPayload(Payload<PT> payload, long dueTimeNanos) {
+      this.payload = payload;
+      this.dueTimeNanos = dueTimeNanos;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(dueTimeNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(dueTimeNanos, ((RateDelayedPayload<?>) other).dueTimeNanos);
+    }
+  }
+
+  /**
+   * All access has to happen inside `orderingKeyQueues` compute methods.
+   */
+  private static class OrderingKeyQueue<PT> {
+
+    /**
+     * The payload which is in the queue or being processed.
+     */
+    private Payload<PT> head;
+    private ArrayDeque<Payload<PT>> waiting;
+
+    private OrderingKeyQueue(Payload<PT> head) {
+      this.head = head;
+    }
+
+    private void addWaiting(Payload<PT> payload) {
+      if (waiting == null) {
+        waiting = new ArrayDeque<>(2);
+      }
+      waiting.add(payload);
+    }
+
+    private boolean promoteNext() {
+      Payload<PT> next = waiting == null ? null : waiting.poll();
+      if (next == null) {
+        return false;
+      }
+      head = next;
+      return true;
+    }
+  }
+
+  public enum ExecutionMode {
+    /**
+     * A dispatcher thread takes payloads from the queue and submits each of those, or each batch, as a new task to the executor service.
+     */
+    DISPATCHER,
+    /**
+     * `maxConcurrency` long-lived workers take payloads directly from the queue, avoiding the dispatcher hop and per payload task submission.
+     */
+    WORKERS,
+    /**
+     * Same as `DISPATCHER`, but every payload, or batch, is processed on a new virtual thread, so I/O bound processing can have thousands of
+     * payloads in progress at low cost. The dispatcher itself still runs on the executor service.
+     *
+     * <p>Requires Java 21 or newer, and falls back to `DISPATCHER` on older versions.
+     */
+    VIRTUAL_THREADS
+  }
+
+  public enum BackpressurePolicy {
+    /**
+     * Data is discarded right away, when the hard queue limit is reached.
+     */
+    DISCARD,
+    /**
+     * Producer waits for the queue capacity up to `maxScheduleWait`.
+     */
+    BLOCK
   }
 
   public enum DiscardReason {
     HARD_LIMIT,
-    SOFT_LIMIT
+    SOFT_LIMIT,
+    LANE_LIMIT,
+    /**
+     * Queue time of payloads has stayed above `sheddingTargetDelay`.
+     */
+    QUEUE_DELAY
   }
 
   @Data
@@ -236,7 +1799,19 @@ public class DiscardingQueueProcessor<T, K> {
   public static class ScheduleResult {
 
     private boolean scheduled;
+    /**
+     * The data was merged into an already pending payload.
+     */
+    private boolean coalesced;
+    /**
+     * The data was written to the overflow.
+     */
+    private boolean overflowed;
     private DiscardReason discardReason;
+    /**
+     * How long the producer waited for the queue capacity.
+     */
+    private Duration waitTime = Duration.ZERO;
   }
 
 }
@@ -0,0 +1,156 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import com.transferwise.common.baseutils.concurrency.DiscardingQueueProcessor.DiscardReason;
+import com.transferwise.common.baseutils.meters.cache.IMeterCache;
+import com.transferwise.common.baseutils.meters.cache.TagsSet;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Kept separate from {@link DiscardingQueueProcessor}, so Micrometer is only needed on classpath when metrics are enabled.
+ *
+ * <p>Meters are resolved once, so the processing hot path does not need any meter cache lookups.
+ *
+ * <p>Cached as a meters container by the processor name, so `meterCache.clear()` resets it. Gauges read the processor bound last, so a
+ * processor started again, or a new one with the same name, does not leave the gauges pointing to an old instance.
+ */
+class DiscardingQueueProcessorMetrics {
+
+  static final String METRIC_PREFIX = "tw.dqp.";
+  static final String TAG_PROCESSOR = "processor";
+  static final String TAG_REASON = "reason";
+  static final String TAG_LANE = "lane";
+
+  private final IMeterCache meterCache;
+  private final String processorName;
+  private final Counter scheduledCounter;
+  private final Counter coalescedCounter;
+  private final Counter overflowedCounter;
+  private final Map<DiscardReason, Counter> discardedCounters = new EnumMap<>(DiscardReason.class);
+  private final Counter timedOutCounter;
+  private final Counter failedCounter;
+  private final Timer scheduleWaitTimer;
+  private final Timer queueTimer;
+  private final Timer processingTimer;
+  private volatile DiscardingQueueProcessor<?, ?> processor;
+  private volatile List<Counter> laneScheduledCounters = List.of();
+  private volatile List<Map<DiscardReason, Counter>> laneDiscardedCounters = List.of();
+
+  private DiscardingQueueProcessorMetrics(IMeterCache meterCache, String processorName, TagsSet tags) {
+    this.meterCache = meterCache;
+    this.processorName = processorName;
+
+    scheduledCounter = meterCache.counter(METRIC_PREFIX + "scheduled", tags);
+    coalescedCounter = meterCache.counter(METRIC_PREFIX + "coalesced", tags);
+    overflowedCounter = meterCache.counter(METRIC_PREFIX + "overflowed", tags);
+    for (DiscardReason discardReason : DiscardReason.values()) {
+      discardedCounters.put(discardReason,
+          meterCache.counter(METRIC_PREFIX + "discarded", TagsSet.of(TAG_PROCESSOR, processorName, TAG_REASON, discardReason.name())));
+    }
+    timedOutCounter = meterCache.counter(METRIC_PREFIX + "timed_out", tags);
+    failedCounter = meterCache.counter(METRIC_PREFIX + "failed", tags);
+    scheduleWaitTimer = meterCache.timer(METRIC_PREFIX + "schedule.wait.time", tags);
+    queueTimer = meterCache.timer(METRIC_PREFIX + "queue.time", tags);
+    processingTimer = meterCache.timer(METRIC_PREFIX + "processing.time", tags);
+
+    registerGauge(METRIC_PREFIX + "queue.size", tags, DiscardingQueueProcessor::getQueueSize);
+    registerGauge(METRIC_PREFIX + "concurrency", tags, DiscardingQueueProcessor::getConcurrency);
+    registerGauge(METRIC_PREFIX + "concurrency.limit", tags, DiscardingQueueProcessor::getConcurrencyLimit);
+    registerGauge(METRIC_PREFIX + "overflow.size", tags, DiscardingQueueProcessor::getOverflowSize);
+  }
+
+  static DiscardingQueueProcessorMetrics of(IMeterCache meterCache, String processorName, DiscardingQueueProcessor<?, ?> processor,
+      List<DiscardingQueueProcessor.Lane> lanes) {
+    DiscardingQueueProcessorMetrics metrics = meterCache.metersContainer(METRIC_PREFIX + "processor", TagsSet.of(TAG_PROCESSOR, processorName),
+        (name, tags) -> new DiscardingQueueProcessorMetrics(meterCache, processorName, tags));
+    metrics.bind(processor, lanes);
+    return metrics;
+  }
+
+  private void bind(DiscardingQueueProcessor<?, ?> processor, List<DiscardingQueueProcessor.Lane> lanes) {
+    this.processor = processor;
+    List<Counter> scheduledCounters = new ArrayList<>();
+    List<Map<DiscardReason, Counter>> discardedCounters = new ArrayList<>();
+    if (lanes != null) {
+      for (DiscardingQueueProcessor.Lane lane : lanes) {
+        String laneName = lane.getName();
+        TagsSet laneTags = TagsSet.of(TAG_PROCESSOR, processorName, TAG_LANE, laneName);
+        scheduledCounters.add(meterCache.counter(METRIC_PREFIX + "lane.scheduled", laneTags));
+        Map<DiscardReason, Counter> discardedByReason = new EnumMap<>(DiscardReason.class);
+        for (DiscardReason discardReason : DiscardReason.values()) {
+          discardedByReason.put(discardReason, meterCache.counter(METRIC_PREFIX + "lane.discarded",
+              TagsSet.of(TAG_PROCESSOR, processorName, TAG_LANE, laneName, TAG_REASON, discardReason.name())));
+        }
+        discardedCounters.add(discardedByReason);
+        registerGauge(METRIC_PREFIX + "lane.queue.size", laneTags, p -> p.getLaneQueueSize(laneName));
+      }
+    }
+    laneScheduledCounters = scheduledCounters;
+    laneDiscardedCounters = discardedCounters;
+  }
+
+  /**
+   * A gauge left in the registry by an earlier container of the same processor would keep reading that one, so it is replaced.
+   */
+  private void registerGauge(String name, TagsSet tags, ToDoubleFunction<DiscardingQueueProcessor<?, ?>> valueFunction) {
+    var meterRegistry = meterCache.getMeterRegistry();
+    Gauge existingGauge = meterRegistry.find(name).tags(tags.getMicrometerTags()).gauge();
+    if (existingGauge != null) {
+      meterRegistry.remove(existingGauge);
+    }
+    Gauge.builder(name, this, metrics -> {
+      DiscardingQueueProcessor<?, ?> processor = metrics.processor;
+      return processor == null ? Double.NaN : valueFunction.applyAsDouble(processor);
+    }).tags(tags.getMicrometerTags()).register(meterRegistry);
+  }
+
+  void registerScheduled() {
+    scheduledCounter.increment();
+  }
+
+  void registerCoalesced() {
+    coalescedCounter.increment();
+  }
+
+  void registerOverflowed() {
+    overflowedCounter.increment();
+  }
+
+  void registerDiscarded(DiscardReason discardReason) {
+    discardedCounters.get(discardReason).increment();
+  }
+
+  void registerLaneScheduled(int laneIndex) {
+    laneScheduledCounters.get(laneIndex).increment();
+  }
+
+  void registerLaneDiscarded(int laneIndex, DiscardReason discardReason) {
+    laneDiscardedCounters.get(laneIndex).get(discardReason).increment();
+  }
+
+  void registerTimedOut(int payloadsCount) {
+    timedOutCounter.increment(payloadsCount);
+  }
+
+  void registerScheduleWait(long waitTimeNanos) {
+    scheduleWaitTimer.record(waitTimeNanos, TimeUnit.NANOSECONDS);
+  }
+
+  void registerQueueTime(long queueTimeMillis) {
+    queueTimer.record(queueTimeMillis, TimeUnit.MILLISECONDS);
+  }
+
+  void registerProcessing(long processingTimeNanos, boolean failed) {
+    if (failed) {
+      failedCounter.increment();
+    }
+    processingTimer.record(processingTimeNanos, TimeUnit.NANOSECONDS);
+  }
+}
@@ -0,0 +1,22 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import java.time.Duration;
+
+/**
+ * Execution times of a fixed interval task, the period after the previous execution has ended.
+ */
+class FixedIntervalSchedule implements TaskSchedule {
+
+  private final long periodMillis;
+  private final Duration maxPeriodJitter;
+
+  FixedIntervalSchedule(Duration period, Duration maxPeriodJitter) {
+    this.periodMillis = period.toMillis();
+    this.maxPeriodJitter = maxPeriodJitter;
+  }
+
+  @Override
+  public long nextExecutionTime(long executionTimeMillis, long nowMillis) {
+    return nowMillis + periodMillis + Jitter.randomMillis(maxPeriodJitter);
+  }
+}
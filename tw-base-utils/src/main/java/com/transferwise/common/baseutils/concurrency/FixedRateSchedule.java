@@ -0,0 +1,52 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import com.google.common.base.Preconditions;
+import com.transferwise.common.baseutils.concurrency.ScheduledTaskExecutor.OverrunPolicy;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execution times of a fixed rate task, aligned to its first execution time.
+ */
+class FixedRateSchedule implements TaskSchedule {
+
+  private final long periodMillis;
+  private final OverrunPolicy overrunPolicy;
+  private final AtomicLong overrunsCount = new AtomicLong();
+  private final AtomicLong skippedExecutionsCount = new AtomicLong();
+
+  FixedRateSchedule(Duration period, OverrunPolicy overrunPolicy) {
+    Preconditions.checkArgument(period.toMillis() > 0, "Period has to be at least 1 millisecond.");
+    this.periodMillis = period.toMillis();
+    this.overrunPolicy = Preconditions.checkNotNull(overrunPolicy);
+  }
+
+  @Override
+  public long nextExecutionTime(long executionTimeMillis, long nowMillis) {
+    long missedCount = Math.max(0, nowMillis - executionTimeMillis) / periodMillis;
+    if (missedCount == 0) {
+      return executionTimeMillis + periodMillis;
+    }
+    overrunsCount.incrementAndGet();
+    switch (overrunPolicy) {
+      case SKIP:
+        skippedExecutionsCount.addAndGet(missedCount);
+        return executionTimeMillis + (missedCount + 1) * periodMillis;
+      case CATCH_UP_ONCE:
+        skippedExecutionsCount.addAndGet(missedCount - 1);
+        return executionTimeMillis + missedCount * periodMillis;
+      default:
+        return executionTimeMillis + periodMillis;
+    }
+  }
+
+  @Override
+  public long getOverrunsCount() {
+    return overrunsCount.get();
+  }
+
+  @Override
+  public long getSkippedExecutionsCount() {
+    return skippedExecutionsCount.get();
+  }
+}
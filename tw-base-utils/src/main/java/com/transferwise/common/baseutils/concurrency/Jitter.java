@@ -0,0 +1,31 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import com.google.common.base.Preconditions;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * Random delays added to execution times of a periodic task, so the same task started at the same time on many nodes does not execute in
+ * lockstep.
+ */
+@Data
+@Accessors(chain = true)
+public class Jitter {
+
+  /**
+   * Up to this much is added to the first execution time.
+   */
+  private Duration maxInitialJitter = Duration.ZERO;
+  /**
+   * Up to this much is added to every execution time. It does not accumulate, i.e. the next execution time is computed without it.
+   */
+  private Duration maxPeriodJitter = Duration.ZERO;
+
+  static long randomMillis(Duration maxJitter) {
+    Preconditions.checkArgument(!maxJitter.isNegative(), "Jitter can not be negative.");
+    long maxJitterMillis = maxJitter.toMillis();
+    return maxJitterMillis == 0 ? 0 : ThreadLocalRandom.current().nextLong(maxJitterMillis + 1);
+  }
+}
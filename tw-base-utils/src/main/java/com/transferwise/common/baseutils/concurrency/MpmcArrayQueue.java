@@ -0,0 +1,124 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import com.google.common.base.Preconditions;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, pre-allocated, multi-producer multi-consumer ring buffer.
+ *
+ * <p>Every slot has a sequence number, telling if the slot is free for the producer of a given position, or filled for the consumer of it.
+ * Producers and consumers only contend on their own cache-line padded position counter, and offering or polling does not allocate.
+ */
+class MpmcArrayQueue<E> {
+
+  private final AtomicReferenceArray<E> buffer;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final PaddedAtomicLong producerPosition = new PaddedAtomicLong();
+  private final PaddedAtomicLong consumerPosition = new PaddedAtomicLong();
+
+  MpmcArrayQueue(int requestedCapacity) {
+    Preconditions.checkArgument(requestedCapacity > 0, "Capacity has to be positive.");
+    Preconditions.checkArgument(requestedCapacity <= 1 << 30, "Capacity is too large.");
+
+    int capacity = requestedCapacity == 1 ? 1 : Integer.highestOneBit(requestedCapacity - 1) << 1;
+    buffer = new AtomicReferenceArray<>(capacity);
+    sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+    mask = capacity - 1;
+  }
+
+  /**
+   * Returns `false`, when the queue is full.
+   */
+  boolean offer(E element) {
+    Preconditions.checkNotNull(element);
+
+    long position = producerPosition.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (producerPosition.compareAndSet(position, position + 1)) {
+          buffer.lazySet(index, element);
+          sequences.set(index, position + 1);
+          return true;
+        }
+        position = producerPosition.get();
+      } else if (difference < 0) {
+        return false;
+      } else {
+        position = producerPosition.get();
+      }
+    }
+  }
+
+  /**
+   * Returns `null`, when the queue is empty.
+   */
+  E poll() {
+    long position = consumerPosition.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - (position + 1);
+      if (difference == 0) {
+        if (consumerPosition.compareAndSet(position, position + 1)) {
+          E element = buffer.get(index);
+          buffer.lazySet(index, null);
+          sequences.set(index, position + mask + 1);
+          return element;
+        }
+        position = consumerPosition.get();
+      } else if (difference < 0) {
+        return null;
+      } else {
+        position = consumerPosition.get();
+      }
+    }
+  }
+
+  /**
+   * Returns `null`, when the queue is empty.
+   */
+  E peek() {
+    while (true) {
+      long position = consumerPosition.get();
+      int index = (int) (position & mask);
+      if (sequences.get(index) - (position + 1) < 0) {
+        return null;
+      }
+      E element = buffer.get(index);
+      // The element may have been taken by a consumer in the meanwhile.
+      if (element != null && consumerPosition.get() == position) {
+        return element;
+      }
+    }
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Padding keeps the counters of producers and consumers on separate cache lines.
+   */
+  @SuppressWarnings("unused")
+  @SuppressFBWarnings("URF_UNREAD_FIELD")
+  private static class PaddedAtomicLong extends AtomicLong {
+
+    private static final long serialVersionUID = 1L;
+
+    private long p1;
+    private long p2;
+    private long p3;
+    private long p4;
+    private long p5;
+    private long p6;
+    private long p7;
+  }
+}
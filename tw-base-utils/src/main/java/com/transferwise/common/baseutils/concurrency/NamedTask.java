@@ -0,0 +1,50 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Task with a name, which `ScheduledTaskExecutor` metrics are tagged with, and optionally a `TaskGroup` it is executed in.
+ *
+ * <p>Every name gets its own meters, so names should be static, e.g. a job's class name, and not contain any ids.
+ */
+public final class NamedTask implements Runnable {
+
+  private final String name;
+  private final String groupName;
+  private final Runnable runnable;
+
+  private NamedTask(String name, String groupName, Runnable runnable) {
+    this.name = Preconditions.checkNotNull(name);
+    this.groupName = groupName;
+    this.runnable = Preconditions.checkNotNull(runnable);
+  }
+
+  public static NamedTask of(String name, Runnable runnable) {
+    return new NamedTask(name, null, runnable);
+  }
+
+  public static NamedTask of(String name, String groupName, Runnable runnable) {
+    return new NamedTask(name, Preconditions.checkNotNull(groupName), runnable);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getGroupName() {
+    return groupName;
+  }
+
+  @Override
+  public void run() {
+    runnable.run();
+  }
+
+  static String nameOf(Runnable runnable) {
+    return runnable instanceof NamedTask ? ((NamedTask) runnable).getName() : null;
+  }
+
+  static String groupNameOf(Runnable runnable) {
+    return runnable instanceof NamedTask ? ((NamedTask) runnable).getGroupName() : null;
+  }
+}
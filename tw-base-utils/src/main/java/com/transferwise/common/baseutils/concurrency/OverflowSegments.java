@@ -0,0 +1,220 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import com.google.common.base.Preconditions;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * First-in-first-out store of records in append-only segment files.
+ *
+ * <p>Records are appended to the last segment, and a new segment is started when it gets full. Segments are deleted as soon as all of
+ * their records have been read, so disk usage follows the amount of unread records.
+ *
+ * <p>Files are meant for absorbing bursts and are not synced to disk, nor recovered after a restart.
+ */
+@Slf4j
+class OverflowSegments implements AutoCloseable {
+
+  private static final int RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+  private final Path directory;
+  private final long segmentBytes;
+  private final long maxBytes;
+
+  private final Lock lock = new ReentrantLock();
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private final ByteBuffer headerBuffer = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+  private long sizeBytes;
+  private boolean closed;
+  private final AtomicLong recordsCount = new AtomicLong();
+
+  OverflowSegments(Path directory, long segmentBytes, long maxBytes) {
+    Preconditions.checkArgument(segmentBytes > 0, "Segment size has to be positive.");
+    Preconditions.checkArgument(maxBytes > 0, "Maximum size has to be positive.");
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns `false`, when the maximum size would be exceeded or the segments have been closed.
+   */
+  boolean append(long schedulingTimeMillis, byte[] data) throws IOException {
+    long recordBytes = RECORD_HEADER_BYTES + data.length;
+    lock.lock();
+    try {
+      if (closed || sizeBytes + recordBytes > maxBytes) {
+        return false;
+      }
+      Segment segment = segments.peekLast();
+      if (segment == null || (segment.writePosition > 0 && segment.writePosition + recordBytes > segmentBytes)) {
+        segment = createSegment();
+        segments.addLast(segment);
+      }
+
+      headerBuffer.clear();
+      headerBuffer.putInt(data.length).putLong(schedulingTimeMillis).flip();
+      writeFully(segment.channel, headerBuffer, segment.writePosition);
+      writeFully(segment.channel, ByteBuffer.wrap(data), segment.writePosition + RECORD_HEADER_BYTES);
+
+      segment.writePosition += recordBytes;
+      sizeBytes += recordBytes;
+      recordsCount.incrementAndGet();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns `null`, when there are no records.
+   */
+  OverflowRecord read() throws IOException {
+    lock.lock();
+    try {
+      while (true) {
+        Segment segment = segments.peekFirst();
+        if (segment == null) {
+          return null;
+        }
+        if (segment.readPosition == segment.writePosition) {
+          if (segments.size() == 1) {
+            return null;
+          }
+          segments.removeFirst();
+          deleteSegment(segment);
+          continue;
+        }
+
+        headerBuffer.clear();
+        readFully(segment.channel, headerBuffer, segment.readPosition);
+        headerBuffer.flip();
+        int dataLength = headerBuffer.getInt();
+        long schedulingTimeMillis = headerBuffer.getLong();
+        ByteBuffer dataBuffer = ByteBuffer.allocate(dataLength);
+        readFully(segment.channel, dataBuffer, segment.readPosition + RECORD_HEADER_BYTES);
+
+        long recordBytes = RECORD_HEADER_BYTES + dataLength;
+        segment.readPosition += recordBytes;
+        sizeBytes -= recordBytes;
+        recordsCount.decrementAndGet();
+        return new OverflowRecord().setSchedulingTimeMillis(schedulingTimeMillis).setData(dataBuffer.array());
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  long getRecordsCount() {
+    return recordsCount.get();
+  }
+
+  boolean isEmpty() {
+    return recordsCount.get() == 0;
+  }
+
+  /**
+   * Deletes all segments, including the unread records. Nothing can be appended afterwards.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      doClose();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Closes the segments, unless there are unread records. Returns `true`, when closed.
+   *
+   * <p>Appending and closing exclude each other, so a record can not get appended in between the check and the close.
+   */
+  boolean closeIfEmpty() {
+    lock.lock();
+    try {
+      if (recordsCount.get() != 0) {
+        return false;
+      }
+      doClose();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void doClose() {
+    closed = true;
+    for (Segment segment : segments) {
+      deleteSegment(segment);
+    }
+    segments.clear();
+    sizeBytes = 0;
+    recordsCount.set(0);
+  }
+
+  private Segment createSegment() throws IOException {
+    Path path = Files.createTempFile(directory, "dqp-overflow-", ".segment");
+    Segment segment = new Segment();
+    segment.path = path;
+    segment.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    return segment;
+  }
+
+  private void deleteSegment(Segment segment) {
+    try {
+      segment.channel.close();
+      Files.deleteIfExists(segment.path);
+    } catch (IOException e) {
+      log.warn("Could not delete overflow segment '{}'.", segment.path, e);
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    long currentPosition = position;
+    while (buffer.hasRemaining()) {
+      currentPosition += channel.write(buffer, currentPosition);
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    long currentPosition = position;
+    while (buffer.hasRemaining()) {
+      int bytesRead = channel.read(buffer, currentPosition);
+      if (bytesRead < 0) {
+        throw new EOFException("Overflow segment ended unexpectedly.");
+      }
+      currentPosition += bytesRead;
+    }
+  }
+
+  private static class Segment {
+
+    private Path path;
+    private FileChannel channel;
+    private long writePosition;
+    private long readPosition;
+  }
+
+  @Data
+  @Accessors(chain = true)
+  static class OverflowRecord {
+
+    private long schedulingTimeMillis;
+    private byte[] data;
+  }
+}
@@ -0,0 +1,11 @@
+package com.transferwise.common.baseutils.concurrency;
+
+/**
+ * Serializes payload data for {@link DiscardingQueueProcessor} overflow.
+ */
+public interface PayloadCodec<T> {
+
+  byte[] encode(T data);
+
+  T decode(byte[] bytes);
+}
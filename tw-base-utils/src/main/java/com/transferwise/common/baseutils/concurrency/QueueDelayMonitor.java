@@ -0,0 +1,52 @@
+package com.transferwise.common.baseutils.concurrency;
+
+/**
+ * Detects a standing queue in the style of CoDel.
+ *
+ * <p>The queue is considered overloaded, when the queue delay of taken payloads stays above the target for a whole interval, meaning even the
+ * shortest delay seen during the interval was above the target. Short bursts, which the queue drains quickly, are not considered as overload.
+ *
+ * <p>The overload ends with the first payload taken below the target delay, or when no payloads above the target have been taken for an
+ * interval.
+ */
+class QueueDelayMonitor {
+
+  private static final long NOT_ABOVE_TARGET = Long.MIN_VALUE;
+
+  private final long targetDelayMillis;
+  private final long intervalMillis;
+
+  private volatile long firstAboveTargetTimeMillis = NOT_ABOVE_TARGET;
+  private volatile long lastAboveTargetTimeMillis = NOT_ABOVE_TARGET;
+  private volatile boolean overloaded;
+
+  QueueDelayMonitor(long targetDelayMillis, long intervalMillis) {
+    this.targetDelayMillis = targetDelayMillis;
+    this.intervalMillis = intervalMillis;
+  }
+
+  void onTaken(long queueDelayMillis, long nowMillis) {
+    if (queueDelayMillis < targetDelayMillis) {
+      // Avoiding writes to shared fields in the common case.
+      if (firstAboveTargetTimeMillis != NOT_ABOVE_TARGET) {
+        firstAboveTargetTimeMillis = NOT_ABOVE_TARGET;
+      }
+      if (overloaded) {
+        overloaded = false;
+      }
+      return;
+    }
+
+    lastAboveTargetTimeMillis = nowMillis;
+    long firstAboveTargetTime = firstAboveTargetTimeMillis;
+    if (firstAboveTargetTime == NOT_ABOVE_TARGET) {
+      firstAboveTargetTimeMillis = nowMillis;
+    } else if (!overloaded && nowMillis - firstAboveTargetTime >= intervalMillis) {
+      overloaded = true;
+    }
+  }
+
+  boolean isOverloaded(long nowMillis) {
+    return overloaded && nowMillis - lastAboveTargetTimeMillis < intervalMillis;
+  }
+}
@@ -0,0 +1,43 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Rate of `permitsPerSecond` on average, with bursts of up to `burst` permits.
+ *
+ * <p>Both can be changed at runtime and apply to the next permits taken.
+ */
+public class RateLimit {
+
+  private volatile double permitsPerSecond;
+  private volatile int burst;
+
+  public RateLimit(double permitsPerSecond, int burst) {
+    setPermitsPerSecond(permitsPerSecond);
+    setBurst(burst);
+  }
+
+  public RateLimit(double permitsPerSecond) {
+    this(permitsPerSecond, 1);
+  }
+
+  public double getPermitsPerSecond() {
+    return permitsPerSecond;
+  }
+
+  public RateLimit setPermitsPerSecond(double permitsPerSecond) {
+    Preconditions.checkArgument(permitsPerSecond > 0, "Permits per second has to be positive.");
+    this.permitsPerSecond = permitsPerSecond;
+    return this;
+  }
+
+  public int getBurst() {
+    return burst;
+  }
+
+  public RateLimit setBurst(int burst) {
+    Preconditions.checkArgument(burst >= 1, "Burst has to be at least 1.");
+    this.burst = burst;
+    return this;
+  }
+}
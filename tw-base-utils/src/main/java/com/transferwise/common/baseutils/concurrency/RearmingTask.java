@@ -0,0 +1,136 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import com.transferwise.common.baseutils.ExceptionUtils;
+import com.transferwise.common.baseutils.clock.ClockHolder;
+import com.transferwise.common.baseutils.concurrency.ScheduledTaskExecutor.TaskHandle;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Periodic task on top of `ScheduledTaskExecutor.scheduleOnce`, scheduling its next execution after every execution has ended. Backs the
+ * default periodic scheduling methods of `ScheduledTaskExecutor`, so implementations only need to support one-off tasks.
+ *
+ * <p>Execution times are taken from the clock of `ClockHolder`.
+ */
+class RearmingTask implements TaskHandle {
+
+  private final ScheduledTaskExecutor taskExecutor;
+  private final Runnable task;
+  /**
+   * Keeps the name and the group of a `NamedTask` for the executor.
+   */
+  private final Runnable onceTask;
+  private final TaskSchedule taskSchedule;
+  private final Lock lock = new ReentrantLock();
+  private final Condition stoppedCondition = lock.newCondition();
+  /**
+   * Guarded by `lock`.
+   */
+  private long executionTimeMillis;
+  private volatile TaskHandle onceTaskHandle;
+  private volatile boolean stopRequested;
+  private volatile boolean working;
+
+  private RearmingTask(ScheduledTaskExecutor taskExecutor, Runnable task, TaskSchedule taskSchedule) {
+    this.taskExecutor = taskExecutor;
+    this.task = task;
+    this.taskSchedule = taskSchedule;
+    if (NamedTask.groupNameOf(task) != null) {
+      onceTask = NamedTask.of(NamedTask.nameOf(task), NamedTask.groupNameOf(task), this::execute);
+    } else if (NamedTask.nameOf(task) != null) {
+      onceTask = NamedTask.of(NamedTask.nameOf(task), this::execute);
+    } else {
+      onceTask = this::execute;
+    }
+  }
+
+  static TaskHandle schedule(ScheduledTaskExecutor taskExecutor, Runnable task, TaskSchedule taskSchedule, Duration initialDelay) {
+    var rearmingTask = new RearmingTask(taskExecutor, task, taskSchedule);
+    long nowMillis = currentTimeMillis();
+    LockUtils.withLock(rearmingTask.lock, () -> rearmingTask.scheduleAt(nowMillis + initialDelay.toMillis(), nowMillis));
+    return rearmingTask;
+  }
+
+  @Override
+  public void stop() {
+    LockUtils.withLock(lock, () -> {
+      stopRequested = true;
+      if (onceTaskHandle != null) {
+        onceTaskHandle.stop();
+      }
+      stoppedCondition.signalAll();
+    });
+  }
+
+  @Override
+  public boolean hasStopped() {
+    return stopRequested && !working;
+  }
+
+  @Override
+  public boolean waitUntilStopped(Duration waitTime) {
+    long start = currentTimeMillis();
+    return LockUtils.withLock(lock, () -> ExceptionUtils.doUnchecked(() -> {
+      while (!hasStopped()) {
+        long waitMillis = start + waitTime.toMillis() - currentTimeMillis();
+        if (waitMillis <= 0) {
+          return false;
+        }
+        boolean ignored = stoppedCondition.await(waitMillis, TimeUnit.MILLISECONDS);
+      }
+      return true;
+    }));
+  }
+
+  @Override
+  public boolean isWorking() {
+    return working;
+  }
+
+  @Override
+  public long getOverrunsCount() {
+    return taskSchedule.getOverrunsCount();
+  }
+
+  @Override
+  public long getSkippedExecutionsCount() {
+    return taskSchedule.getSkippedExecutionsCount();
+  }
+
+  /**
+   * Has to be called under `lock`.
+   */
+  private void scheduleAt(long executionTimeMillis, long nowMillis) {
+    if (!stopRequested) {
+      this.executionTimeMillis = executionTimeMillis;
+      onceTaskHandle = taskExecutor.scheduleOnce(onceTask, Duration.ofMillis(Math.max(0, executionTimeMillis - nowMillis)));
+    }
+  }
+
+  private void execute() {
+    boolean started = LockUtils.withLock(lock, () -> {
+      working = !stopRequested;
+      return working;
+    });
+    if (!started) {
+      return;
+    }
+    try {
+      task.run();
+    } finally {
+      LockUtils.withLock(lock, () -> {
+        working = false;
+        long nowMillis = currentTimeMillis();
+        scheduleAt(taskSchedule.nextExecutionTime(executionTimeMillis, nowMillis), nowMillis);
+        stoppedCondition.signalAll();
+      });
+    }
+  }
+
+  private static long currentTimeMillis() {
+    return ClockHolder.getClock().millis();
+  }
+}
@@ -1,11 +1,61 @@
 package com.transferwise.common.baseutils.concurrency;
 
+import com.transferwise.common.baseutils.clock.ClockHolder;
 import java.time.Duration;
 
 public interface ScheduledTaskExecutor {
 
   TaskHandle scheduleAtFixedInterval(Runnable task, Duration initialDelay, Duration period);
 
+  /**
+   * Like `scheduleAtFixedInterval(task, initialDelay, period)`, with random delays from `jitter` added to the initial delay and to every
+   * period.
+   *
+   * <p>The default implementation schedules every execution with `scheduleOnce`, after the previous one has ended, taking the time from
+   * `ClockHolder`.
+   */
+  default TaskHandle scheduleAtFixedInterval(Runnable task, Duration initialDelay, Duration period, Jitter jitter) {
+    var taskSchedule = new FixedIntervalSchedule(period, jitter.getMaxPeriodJitter());
+    return RearmingTask.schedule(this, task, taskSchedule, initialDelay.plusMillis(Jitter.randomMillis(jitter.getMaxInitialJitter())));
+  }
+
+  /**
+   * Executes the task at the times matching the cron expression, in the time zone of the executor's clock. The expression has fields
+   * `second minute hour day-of-month month day-of-week` as in Unix cron, where the seconds field can be left out.
+   *
+   * <p>Executions never overlap. Times, which have passed while the previous execution was running, are skipped.
+   */
+  default TaskHandle scheduleWithCron(Runnable task, String cronExpression) {
+    return scheduleWithCron(task, cronExpression, new Jitter());
+  }
+
+  /**
+   * Like `scheduleWithCron(task, cronExpression)`, with random delays from `jitter` added to the execution times.
+   *
+   * <p>The default implementation schedules every execution with `scheduleOnce`, after the previous one has ended, taking the time and the
+   * time zone from `ClockHolder`.
+   */
+  default TaskHandle scheduleWithCron(Runnable task, String cronExpression, Jitter jitter) {
+    var clock = ClockHolder.getClock();
+    var taskSchedule = new CronSchedule(cronExpression, clock.getZone(), jitter.getMaxPeriodJitter());
+    long nowMillis = clock.millis();
+    long initialDelayMillis = taskSchedule.firstExecutionTime(nowMillis, jitter.getMaxInitialJitter()) - nowMillis;
+    return RearmingTask.schedule(this, task, taskSchedule, Duration.ofMillis(initialDelayMillis));
+  }
+
+  /**
+   * Executes the task at `initialDelay + n * period` from now, so the executions do not drift by the task's own execution time.
+   *
+   * <p>Executions never overlap. When an execution ends after the next one was due, the `overrunPolicy` decides what happens with the missed
+   * executions.
+   *
+   * <p>The default implementation schedules every execution with `scheduleOnce`, after the previous one has ended, taking the time from
+   * `ClockHolder`.
+   */
+  default TaskHandle scheduleAtFixedRate(Runnable task, Duration initialDelay, Duration period, OverrunPolicy overrunPolicy) {
+    return RearmingTask.schedule(this, task, new FixedRateSchedule(period, overrunPolicy), initialDelay);
+  }
+
   TaskHandle scheduleOnce(Runnable task, Duration initialDelay);
 
   void start();
@@ -26,5 +76,34 @@ public interface ScheduledTaskExecutor {
     boolean waitUntilStopped(Duration waitTime);
 
     boolean isWorking();
+
+    /**
+     * Number of times a fixed rate task's execution ended after its next execution was due.
+     */
+    default long getOverrunsCount() {
+      return 0;
+    }
+
+    /**
+     * Number of fixed rate task's executions not done, because of the overrun policy.
+     */
+    default long getSkippedExecutionsCount() {
+      return 0;
+    }
+  }
+
+  enum OverrunPolicy {
+    /**
+     * Missed executions are skipped and the next execution is at the next due time in the future.
+     */
+    SKIP,
+    /**
+     * Missed executions are replaced by one execution right away.
+     */
+    CATCH_UP_ONCE,
+    /**
+     * All missed executions are done right away, one after another.
+     */
+    RUN_ALL
   }
 }
@@ -0,0 +1,111 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import com.transferwise.common.baseutils.meters.cache.IMeterCache;
+import com.transferwise.common.baseutils.meters.cache.TagsSet;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Kept separate from the executors, so Micrometer is only needed on classpath when metrics are enabled.
+ *
+ * <p>Task meters are resolved once per task, so executions do not need any meter cache lookups.
+ *
+ * <p>Cached as a meters container by the executor name, so `meterCache.clear()` resets it. Gauges read the executor bound last, so an
+ * executor started again, or a new one with the same name, does not leave the gauges pointing to an old instance.
+ */
+class ScheduledTaskExecutorMetrics {
+
+  static final String METRIC_PREFIX = "tw.ste.";
+  static final String TAG_EXECUTOR = "executor";
+  static final String TAG_TASK = "task";
+  static final String UNNAMED_TASK = "unnamed";
+
+  private final IMeterCache meterCache;
+  private final String executorName;
+  private final TagsSet tags;
+
+  private ScheduledTaskExecutorMetrics(IMeterCache meterCache, String executorName, TagsSet tags) {
+    this.meterCache = meterCache;
+    this.executorName = executorName;
+    this.tags = tags;
+  }
+
+  static <E> ScheduledTaskExecutorMetrics of(IMeterCache meterCache, String executorName, E executor, ToDoubleFunction<E> queueSizeFunction,
+      ToDoubleFunction<E> workingTasksCountFunction) {
+    ScheduledTaskExecutorMetrics metrics = meterCache.metersContainer(METRIC_PREFIX + "executor", TagsSet.of(TAG_EXECUTOR, executorName),
+        (name, tags) -> new ScheduledTaskExecutorMetrics(meterCache, executorName, tags));
+    metrics.bind(executor, queueSizeFunction, workingTasksCountFunction);
+    return metrics;
+  }
+
+  private <E> void bind(E executor, ToDoubleFunction<E> queueSizeFunction, ToDoubleFunction<E> workingTasksCountFunction) {
+    registerGauge(METRIC_PREFIX + "queue.size", () -> queueSizeFunction.applyAsDouble(executor));
+    registerGauge(METRIC_PREFIX + "working", () -> workingTasksCountFunction.applyAsDouble(executor));
+  }
+
+  /**
+   * A gauge left in the registry by an earlier executor with the same name would keep reading that one, so it is replaced.
+   *
+   * <p>The gauge is registered on this container, which the meter cache keeps reachable, and not on the executor, which Micrometer would
+   * only reference weakly.
+   */
+  private void registerGauge(String name, DoubleSupplier valueSupplier) {
+    var meterRegistry = meterCache.getMeterRegistry();
+    Gauge existingGauge = meterRegistry.find(name).tags(tags.getMicrometerTags()).gauge();
+    if (existingGauge != null) {
+      meterRegistry.remove(existingGauge);
+    }
+    Gauge.builder(name, this, metrics -> valueSupplier.getAsDouble()).tags(tags.getMicrometerTags()).register(meterRegistry);
+  }
+
+  TaskMetrics getTaskMetrics(String taskName) {
+    TagsSet tags = TagsSet.of(TAG_EXECUTOR, executorName, TAG_TASK, taskName == null ? UNNAMED_TASK : taskName);
+    return meterCache.metersContainer(METRIC_PREFIX + "task", tags, (name, taskTags) -> new TaskMetrics(taskTags));
+  }
+
+  class TaskMetrics {
+
+    private final Timer dispatchLagTimer;
+    private final Timer executionTimer;
+    private final Counter failedCounter;
+    private final Counter overrunsCounter;
+    private final Counter skippedCounter;
+    private final Counter rejectedCounter;
+
+    private TaskMetrics(TagsSet tags) {
+      dispatchLagTimer = meterCache.timer(METRIC_PREFIX + "dispatch.lag", tags,
+          (name, lagTags) -> Timer.builder(name).tags(lagTags.getMicrometerTags()).publishPercentileHistogram()
+              .register(meterCache.getMeterRegistry()));
+      executionTimer = meterCache.timer(METRIC_PREFIX + "execution.time", tags);
+      failedCounter = meterCache.counter(METRIC_PREFIX + "failed", tags);
+      overrunsCounter = meterCache.counter(METRIC_PREFIX + "overruns", tags);
+      skippedCounter = meterCache.counter(METRIC_PREFIX + "skipped", tags);
+      rejectedCounter = meterCache.counter(METRIC_PREFIX + "rejected", tags);
+    }
+
+    void registerExecution(long dispatchLagMillis, long executionTimeNanos, boolean failed) {
+      dispatchLagTimer.record(Math.max(0, dispatchLagMillis), TimeUnit.MILLISECONDS);
+      executionTimer.record(executionTimeNanos, TimeUnit.NANOSECONDS);
+      if (failed) {
+        failedCounter.increment();
+      }
+    }
+
+    void registerRejected() {
+      rejectedCounter.increment();
+    }
+
+    void registerOverruns(long overrunsCount, long skippedExecutionsCount) {
+      if (overrunsCount > 0) {
+        overrunsCounter.increment(overrunsCount);
+      }
+      if (skippedExecutionsCount > 0) {
+        skippedCounter.increment(skippedExecutionsCount);
+      }
+    }
+  }
+}
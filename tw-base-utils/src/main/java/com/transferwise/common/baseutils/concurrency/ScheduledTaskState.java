@@ -0,0 +1,25 @@
+package com.transferwise.common.baseutils.concurrency;
+
+/**
+ * States of a task in the scheduled task executors. Tasks move between the states with compare-and-set, so executions of different tasks
+ * do not contend on a common lock.
+ */
+enum ScheduledTaskState {
+  /**
+   * New, dispatched, or finished without being rescheduled.
+   */
+  IDLE,
+  /**
+   * Has a live entry in the executor's queue.
+   */
+  QUEUED,
+  RUNNING,
+  /**
+   * Running, and stopped meanwhile. Becomes `CANCELLED`, when the execution finishes.
+   */
+  STOPPING,
+  /**
+   * Stopped. An entry the executor may still have for the task is skipped.
+   */
+  CANCELLED
+}
@@ -1,15 +1,20 @@
 package com.transferwise.common.baseutils.concurrency;
 
+import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.RateLimiter;
 import com.transferwise.common.baseutils.ExceptionUtils;
+import com.transferwise.common.baseutils.meters.cache.IMeterCache;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.concurrent.DelayQueue;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -18,16 +23,42 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class SimpleScheduledTaskExecutor implements ScheduledTaskExecutor {
 
+  /**
+   * Stopped tasks are left in the queue and skipped. Those are purged, when there are more of them than this share of the queue.
+   */
+  private static final double CANCELLED_TASKS_PURGE_RATIO = 0.5;
+  @SuppressWarnings("checkstyle:MagicNumber")
+  private static final int CANCELLED_TASKS_PURGE_MIN_COUNT = 64;
+
   private final ExecutorService executorService;
-  private final DelayQueue<ScheduledTask> taskQueue;
+  /**
+   * Guarded by `queueLock`.
+   */
+  private final PriorityQueue<ScheduledTask> taskQueue;
+  private final Lock queueLock;
+  private final Condition queueCondition;
+  /**
+   * Stopped tasks still in the queue.
+   */
+  private final AtomicInteger cancelledTasksCount;
   @SuppressWarnings("checkstyle:MagicNumber")
   private Duration tick = Duration.ofMillis(50);
+  private Duration timerSlack = Duration.ZERO;
   private Clock clock;
+  /**
+   * The dispatcher can park until the next execution time only with the system clock, other clocks may be moved any time.
+   */
+  private volatile boolean systemClock = true;
   private final Lock stateLock;
   private final Condition stateCondition;
   private final AtomicInteger workingTasksCount;
   private final RateLimiter nextTaskLoggingRateLimiter = RateLimiter.create(1);
 
+  private String name;
+  private IMeterCache meterCache;
+  private volatile Map<String, TaskGroupBulkhead> taskGroupBulkheads = Map.of();
+  private volatile ScheduledTaskExecutorMetrics metrics;
+
   private volatile boolean started;
   private volatile boolean stopRequested;
 
@@ -37,7 +68,10 @@ public class SimpleScheduledTaskExecutor implements ScheduledTaskExecutor {
     } else {
       this.executorService = new ThreadNamingExecutorServiceWrapper(threadName, executorService);
     }
-    taskQueue = new DelayQueue<>();
+    taskQueue = new PriorityQueue<>();
+    queueLock = new ReentrantLock();
+    queueCondition = queueLock.newCondition();
+    cancelledTasksCount = new AtomicInteger();
     clock = Clock.systemUTC();
     stateLock = new ReentrantLock();
     stateCondition = stateLock.newCondition();
@@ -46,34 +80,99 @@ public class SimpleScheduledTaskExecutor implements ScheduledTaskExecutor {
 
   @Override
   public TaskHandle scheduleAtFixedInterval(Runnable task, Duration initialDelay, Duration period) {
-    ScheduledTask scheduledTask = new ScheduledTask(this, task, period);
-    reschedule(scheduledTask, initialDelay);
-    return scheduledTask.getTaskHandle();
+    return scheduleAtFixedInterval(task, initialDelay, period, new Jitter());
+  }
+
+  @Override
+  public TaskHandle scheduleAtFixedInterval(Runnable task, Duration initialDelay, Duration period, Jitter jitter) {
+    var taskSchedule = new FixedIntervalSchedule(period, jitter.getMaxPeriodJitter());
+    return schedule(new ScheduledTask(this, task, taskSchedule), initialDelay.plusMillis(Jitter.randomMillis(jitter.getMaxInitialJitter())));
+  }
+
+  @Override
+  public TaskHandle scheduleAtFixedRate(Runnable task, Duration initialDelay, Duration period, OverrunPolicy overrunPolicy) {
+    return schedule(new ScheduledTask(this, task, new FixedRateSchedule(period, overrunPolicy)), initialDelay);
+  }
+
+  @Override
+  public TaskHandle scheduleWithCron(Runnable task, String cronExpression, Jitter jitter) {
+    var taskSchedule = new CronSchedule(cronExpression, clock.getZone(), jitter.getMaxPeriodJitter());
+    long nowMillis = currentTimeMillis();
+    long initialDelayMillis = taskSchedule.firstExecutionTime(nowMillis, jitter.getMaxInitialJitter()) - nowMillis;
+    return schedule(new ScheduledTask(this, task, taskSchedule), Duration.ofMillis(initialDelayMillis));
   }
 
   @Override
   public TaskHandle scheduleOnce(Runnable task, Duration initialDelay) {
-    ScheduledTask scheduledTask = new ScheduledTask(this, task, null);
-    reschedule(scheduledTask, initialDelay);
-    return scheduledTask.getTaskHandle();
+    return schedule(new ScheduledTask(this, task, null), initialDelay);
   }
 
+  /**
+   * The longest the dispatcher parks, when a clock other than the system clock is set. With the system clock, the dispatcher parks until
+   * the next execution time, or until a task is scheduled, when there is none.
+   */
   public SimpleScheduledTaskExecutor setTick(Duration tick) {
     this.tick = tick;
     return this;
   }
 
+  /**
+   * Used for tagging metrics.
+   */
+  public SimpleScheduledTaskExecutor setName(String name) {
+    this.name = name;
+    return this;
+  }
+
+  /**
+   * If set, metrics are registered on start. Use `MeterCache` to wrap a `MeterRegistry`.
+   *
+   * <p>Gauges `tw.ste.queue.size` and `tw.ste.working` are tagged with the executor `name`. Timers `tw.ste.dispatch.lag`, which is how late
+   * a task started, and `tw.ste.execution.time`, counters `tw.ste.failed`, `tw.ste.overruns`, `tw.ste.skipped` and `tw.ste.rejected` are tagged
+   * with the `task` name as well. Use `NamedTask` to name the tasks.
+   */
+  public SimpleScheduledTaskExecutor setMeterCache(IMeterCache meterCache) {
+    this.meterCache = meterCache;
+    return this;
+  }
+
+  /**
+   * At most `maxConcurrency` tasks of a group are executed at once, so a misbehaving group can not take all the threads of the executor
+   * service. Tasks are put into a group with `NamedTask`. Groups have to be set before scheduling their tasks.
+   */
+  public SimpleScheduledTaskExecutor setTaskGroups(List<TaskGroup> taskGroups) {
+    this.taskGroupBulkheads = TaskGroupBulkhead.of(taskGroups, executorService);
+    return this;
+  }
+
   public SimpleScheduledTaskExecutor setClock(Clock clock) {
     this.clock = clock;
+    this.systemClock = clock.getClass() == Clock.systemUTC().getClass();
+    return this;
+  }
+
+  /**
+   * How late the dispatcher may wake up for a task, so tasks with close execution times are dispatched on one wake-up.
+   */
+  public SimpleScheduledTaskExecutor setTimerSlack(Duration timerSlack) {
+    Preconditions.checkArgument(!timerSlack.isNegative(), "Timer slack can not be negative.");
+    this.timerSlack = timerSlack;
     return this;
   }
 
   @Override
   public void start() {
+    if (meterCache != null && name == null) {
+      throw new IllegalStateException("Can not start. Name has to be set, when meter cache is set.");
+    }
     LockUtils.withLock(stateLock, () -> {
       if (started) {
         throw new IllegalStateException("Already started.");
       }
+      if (meterCache != null) {
+        metrics = ScheduledTaskExecutorMetrics.of(meterCache, name, this, SimpleScheduledTaskExecutor::getTaskQueueSize,
+            executor -> executor.workingTasksCount.get());
+      }
       started = true;
     });
 
@@ -81,7 +180,7 @@ public class SimpleScheduledTaskExecutor implements ScheduledTaskExecutor {
       while (!stopRequested) {
         ScheduledTask scheduledTask = null;
         try {
-          scheduledTask = taskQueue.poll(tick.toMillis(), TimeUnit.MILLISECONDS);
+          scheduledTask = pollTask();
         } catch (InterruptedException e) {
           if (stopRequested) {
             break;
@@ -91,15 +190,21 @@ public class SimpleScheduledTaskExecutor implements ScheduledTaskExecutor {
         }
         if (log.isDebugEnabled() && scheduledTask == null) {
           if (nextTaskLoggingRateLimiter.tryAcquire()) {
-            var nextScheduledTask = taskQueue.peek();
+            var nextScheduledTask = LockUtils.withLock(queueLock, taskQueue::peek);
             if (nextScheduledTask != null) {
               log.debug("Next scheduled task is executed at '{}'.", Instant.ofEpochMilli(nextScheduledTask.nextExecutionTime));
             }
           }
         }
         if (scheduledTask != null && !stopRequested) {
-          executorService.submit(scheduledTask::execute);
+          // A task stopped while in the queue has given up its queue entry.
+          if (scheduledTask.state.compareAndSet(ScheduledTaskState.QUEUED, ScheduledTaskState.IDLE)) {
+            scheduledTask.dispatch();
+          } else {
+            cancelledTasksCount.decrementAndGet();
+          }
         }
+        purgeCancelledTasksIfNeeded();
       }
     });
   }
@@ -108,98 +213,271 @@ public class SimpleScheduledTaskExecutor implements ScheduledTaskExecutor {
   public void stop() {
     LockUtils.withLock(stateLock, () -> {
       stopRequested = true;
-      taskQueue.clear();
+      LockUtils.withLock(queueLock, () -> {
+        int cancelledCount = 0;
+        for (ScheduledTask scheduledTask : taskQueue) {
+          if (!scheduledTask.state.compareAndSet(ScheduledTaskState.QUEUED, ScheduledTaskState.IDLE)) {
+            cancelledCount++;
+          }
+        }
+        taskQueue.clear();
+        cancelledTasksCount.addAndGet(-cancelledCount);
+        queueCondition.signalAll();
+      });
+      stateCondition.signalAll();
     });
   }
 
   @Override
   public boolean hasStopped() {
-    return LockUtils.withLock(stateLock, () -> stopRequested && workingTasksCount.get() == 0);
+    return stopRequested && workingTasksCount.get() == 0;
   }
 
   @Override
   public boolean waitUntilStopped(Duration waitTime) {
     long start = currentTimeMillis();
-    while (currentTimeMillis() < start + waitTime.toMillis()) {
-      if (hasStopped()) {
-        return true;
+    // Checked under the lock, as finishing tasks signal only after the working tasks count has changed.
+    return LockUtils.withLock(stateLock, () -> ExceptionUtils.doUnchecked(() -> {
+      while (!hasStopped()) {
+        long waitMillis = start + waitTime.toMillis() - currentTimeMillis();
+        if (waitMillis <= 0) {
+          return false;
+        }
+        boolean ignored = stateCondition.await(waitMillis, TimeUnit.MILLISECONDS);
       }
-      LockUtils.withLock(stateLock, () -> ExceptionUtils.doUnchecked(() -> {
-        boolean ignored = stateCondition.await(start - currentTimeMillis() + waitTime.toMillis(), TimeUnit.MILLISECONDS);
-      }));
-    }
-    return hasStopped();
+      return true;
+    }));
   }
 
+  /**
+   * Number of scheduled tasks, not counting the stopped ones, which are still in the queue.
+   */
   public int getTaskQueueSize() {
-    return taskQueue.size();
+    return LockUtils.withLock(queueLock, () -> taskQueue.size() - cancelledTasksCount.get());
   }
 
-  private void reschedule(ScheduledTask scheduledTask, Duration period) {
-    LockUtils.withLock(stateLock, () -> {
+  /**
+   * Number of queue entries, including the stopped tasks, which have not been purged yet.
+   */
+  int getQueueEntriesCount() {
+    return LockUtils.withLock(queueLock, taskQueue::size);
+  }
+
+  private TaskHandle schedule(ScheduledTask scheduledTask, Duration initialDelay) {
+    if (scheduledTask.state.compareAndSet(ScheduledTaskState.IDLE, ScheduledTaskState.QUEUED)) {
+      scheduleAt(scheduledTask, currentTimeMillis() + initialDelay.toMillis());
+    }
+    return scheduledTask.getTaskHandle();
+  }
+
+  /**
+   * The task has to be in the `QUEUED` state already.
+   *
+   * <p>The stop flag is checked under the queue lock, so nothing is added after `stop()` has cleared the queue.
+   */
+  private void scheduleAt(ScheduledTask scheduledTask, long executionTimeMillis) {
+    LockUtils.withLock(queueLock, () -> {
       if (!stopRequested) {
-        scheduledTask.nextExecutionTime = currentTimeMillis() + period.toMillis();
+        scheduledTask.nextExecutionTime = executionTimeMillis;
         taskQueue.add(scheduledTask);
+        if (taskQueue.peek() == scheduledTask) {
+          queueCondition.signalAll();
+        }
+      }
+    });
+  }
+
+  private void onTaskFinished() {
+    if (workingTasksCount.decrementAndGet() == 0 && stopRequested) {
+      LockUtils.withLock(stateLock, stateCondition::signalAll);
+    }
+  }
+
+  /**
+   * Returns the first task, if it is due, parking until its execution time plus the timer slack otherwise.
+   *
+   * <p>Scheduling a task, which becomes the first one, and stopping the executor wake the dispatcher up.
+   */
+  private ScheduledTask pollTask() throws InterruptedException {
+    queueLock.lock();
+    try {
+      ScheduledTask scheduledTask = taskQueue.peek();
+      long delayMillis = scheduledTask == null ? Long.MAX_VALUE : scheduledTask.getDelay(TimeUnit.MILLISECONDS);
+      if (delayMillis > 0 && !stopRequested) {
+        long parkMillis = scheduledTask == null ? Long.MAX_VALUE : delayMillis + timerSlack.toMillis();
+        if (!systemClock) {
+          parkMillis = Math.min(parkMillis, tick.toMillis());
+        }
+        if (parkMillis == Long.MAX_VALUE) {
+          queueCondition.await();
+        } else {
+          boolean ignored = queueCondition.await(parkMillis, TimeUnit.MILLISECONDS);
+        }
+        scheduledTask = taskQueue.peek();
+      }
+      if (scheduledTask != null && scheduledTask.getDelay(TimeUnit.MILLISECONDS) <= 0) {
+        return taskQueue.poll();
+      }
+      return null;
+    } finally {
+      queueLock.unlock();
+    }
+  }
+
+  /**
+   * Removes the stopped tasks in one pass, which is linear to the queue size, instead of every stop being so.
+   */
+  private void purgeCancelledTasksIfNeeded() {
+    int cancelledCount = cancelledTasksCount.get();
+    if (cancelledCount < CANCELLED_TASKS_PURGE_MIN_COUNT) {
+      return;
+    }
+    LockUtils.withLock(queueLock, () -> {
+      if (cancelledCount > taskQueue.size() * CANCELLED_TASKS_PURGE_RATIO) {
+        int sizeBefore = taskQueue.size();
+        taskQueue.removeIf(scheduledTask -> scheduledTask.state.get() == ScheduledTaskState.CANCELLED);
+        cancelledTasksCount.addAndGet(taskQueue.size() - sizeBefore);
       }
     });
   }
 
+  private TaskGroupBulkhead getTaskGroupBulkhead(String groupName) {
+    if (groupName == null) {
+      return null;
+    }
+    TaskGroupBulkhead taskGroupBulkhead = taskGroupBulkheads.get(groupName);
+    if (taskGroupBulkhead == null) {
+      throw new IllegalArgumentException("Task group '" + groupName + "' is not defined.");
+    }
+    return taskGroupBulkhead;
+  }
+
   private long currentTimeMillis() {
     return clock.millis();
   }
 
+  /**
+   * Tasks move between the states with compare-and-set, so executions of different tasks do not contend on a common lock. The queue lock is
+   * taken only for rescheduling, and the locks for waiting on a stop only after a stop was requested.
+   */
   private static class ScheduledTask implements Delayed {
 
     private final Runnable runnable;
     private final TaskHandle taskHandle;
-    private final Duration period;
+    /**
+     * Not set for tasks executed once.
+     */
+    private final TaskSchedule taskSchedule;
+    private final String name;
+    private final TaskGroupBulkhead taskGroupBulkhead;
+    private volatile ScheduledTaskExecutorMetrics.TaskMetrics taskMetrics;
     private long nextExecutionTime;
     private final SimpleScheduledTaskExecutor taskExecutor;
 
     private final Lock stateLock;
     private final Condition stateCondition;
 
-    private volatile boolean stopRequested;
-    private volatile boolean working;
+    private final AtomicReference<ScheduledTaskState> state = new AtomicReference<>(ScheduledTaskState.IDLE);
 
-    private ScheduledTask(SimpleScheduledTaskExecutor taskExecutor, Runnable task, Duration period) {
+    private ScheduledTask(SimpleScheduledTaskExecutor taskExecutor, Runnable task, TaskSchedule taskSchedule) {
       this.runnable = task;
-      this.period = period;
+      this.taskSchedule = taskSchedule;
+      this.name = NamedTask.nameOf(task);
+      this.taskGroupBulkhead = taskExecutor.getTaskGroupBulkhead(NamedTask.groupNameOf(task));
       this.stateLock = new ReentrantLock();
       this.stateCondition = stateLock.newCondition();
       this.taskExecutor = taskExecutor;
       this.taskHandle = new DefaultTaskHandle();
     }
 
+    private void dispatch() {
+      if (taskGroupBulkhead == null) {
+        taskExecutor.executorService.submit(this::execute);
+      } else if (!taskGroupBulkhead.submit(this::execute)) {
+        skipExecution();
+      }
+    }
+
+    /**
+     * The task group's queue is full. A periodic task is rescheduled, as if it was executed.
+     */
+    private void skipExecution() {
+      log.warn("Queue of task group '{}' is full, skipping an execution of task '{}'.", taskGroupBulkhead.getName(), name);
+      var metrics = getTaskMetrics();
+      if (metrics != null) {
+        metrics.registerRejected();
+      }
+      if (taskSchedule != null && state.compareAndSet(ScheduledTaskState.IDLE, ScheduledTaskState.QUEUED)) {
+        taskExecutor.scheduleAt(this, nextExecutionTimeAfterRun());
+      }
+    }
+
     private void execute() {
-      if (!LockUtils.withLock(taskExecutor.stateLock, () -> LockUtils.withLock(stateLock, () -> {
-        if (stopRequested()) {
-          return false;
-        }
-        working = true;
-        taskExecutor.workingTasksCount.incrementAndGet();
-        return true;
-      }))) {
+      if (!state.compareAndSet(ScheduledTaskState.IDLE, ScheduledTaskState.RUNNING)) {
+        return;
+      }
+      taskExecutor.workingTasksCount.incrementAndGet();
+      // Checked after counting the task as working, so it does not run after the executor has reported being stopped.
+      if (taskExecutor.stopRequested) {
+        finish();
         return;
       }
 
+      long dispatchLagMillis = taskExecutor.currentTimeMillis() - nextExecutionTime;
+      long startTimeNanos = System.nanoTime();
+      boolean failed = false;
       try {
         runnable.run();
       } catch (Throwable t) {
+        failed = true;
         log.error(t.getMessage(), t);
       } finally {
-        LockUtils.withLock(taskExecutor.stateLock, () -> {
-          LockUtils.withLock(stateLock, () -> {
-            working = false;
-            taskExecutor.workingTasksCount.decrementAndGet();
-            if (!stopRequested && period != null) {
-              taskExecutor.reschedule(this, period);
-            }
-            stateCondition.signalAll();
-          });
-          taskExecutor.stateCondition.signalAll();
-        });
+        var metrics = getTaskMetrics();
+        if (metrics != null) {
+          metrics.registerExecution(dispatchLagMillis, System.nanoTime() - startTimeNanos, failed);
+        }
+        finish();
+      }
+    }
+
+    /**
+     * Only the executing thread moves the task out of `RUNNING`, a stop can only move it on to `STOPPING`.
+     */
+    private void finish() {
+      boolean reschedule = taskSchedule != null && !taskExecutor.stopRequested;
+      if (state.compareAndSet(ScheduledTaskState.RUNNING, reschedule ? ScheduledTaskState.QUEUED : ScheduledTaskState.IDLE)) {
+        if (reschedule) {
+          taskExecutor.scheduleAt(this, nextExecutionTimeAfterRun());
+        }
+      } else {
+        state.set(ScheduledTaskState.CANCELLED);
+      }
+      taskExecutor.onTaskFinished();
+      if (stopRequested()) {
+        signalStopped();
+      }
+    }
+
+    private void signalStopped() {
+      LockUtils.withLock(stateLock, stateCondition::signalAll);
+    }
+
+    private long nextExecutionTimeAfterRun() {
+      long overrunsCount = taskSchedule.getOverrunsCount();
+      long skippedExecutionsCount = taskSchedule.getSkippedExecutionsCount();
+      long result = taskSchedule.nextExecutionTime(nextExecutionTime, taskExecutor.currentTimeMillis());
+      var metrics = getTaskMetrics();
+      if (metrics != null) {
+        metrics.registerOverruns(taskSchedule.getOverrunsCount() - overrunsCount, taskSchedule.getSkippedExecutionsCount() - skippedExecutionsCount);
       }
+      return result;
+    }
+
+    private ScheduledTaskExecutorMetrics.TaskMetrics getTaskMetrics() {
+      if (taskMetrics == null && taskExecutor.metrics != null) {
+        taskMetrics = taskExecutor.metrics.getTaskMetrics(name);
+      }
+      return taskMetrics;
     }
 
     public TaskHandle getTaskHandle() {
@@ -227,44 +505,70 @@ public class SimpleScheduledTaskExecutor implements ScheduledTaskExecutor {
     }
 
     protected boolean stopRequested() {
-      return stopRequested || taskExecutor.stopRequested;
+      ScheduledTaskState currentState = state.get();
+      return currentState == ScheduledTaskState.STOPPING || currentState == ScheduledTaskState.CANCELLED || taskExecutor.stopRequested;
+    }
+
+    private boolean isWorking() {
+      ScheduledTaskState currentState = state.get();
+      return currentState == ScheduledTaskState.RUNNING || currentState == ScheduledTaskState.STOPPING;
     }
 
     class DefaultTaskHandle implements TaskHandle {
 
       @Override
       public void stop() {
-        LockUtils.withLock(stateLock, () -> {
-          stopRequested = true;
-          // This is O(n)
-          // TODO: Think if we should just leave the things into the queue.
-          taskExecutor.taskQueue.remove(ScheduledTask.this);
-          stateCondition.signalAll();
-        });
+        while (true) {
+          ScheduledTaskState currentState = state.get();
+          if (currentState == ScheduledTaskState.STOPPING || currentState == ScheduledTaskState.CANCELLED) {
+            break;
+          }
+          ScheduledTaskState newState = currentState == ScheduledTaskState.RUNNING ? ScheduledTaskState.STOPPING : ScheduledTaskState.CANCELLED;
+          if (state.compareAndSet(currentState, newState)) {
+            // The queue entry is left in place, and skipped or purged later.
+            if (currentState == ScheduledTaskState.QUEUED) {
+              taskExecutor.cancelledTasksCount.incrementAndGet();
+            }
+            break;
+          }
+        }
+        signalStopped();
       }
 
       @Override
       public boolean hasStopped() {
-        return LockUtils.withLock(stateLock, () -> stopRequested() && !working);
+        return stopRequested() && !ScheduledTask.this.isWorking();
       }
 
       @Override
       public boolean waitUntilStopped(Duration waitTime) {
         long start = taskExecutor.currentTimeMillis();
-        while (taskExecutor.currentTimeMillis() >= start + waitTime.toMillis()) {
-          if (hasStopped()) {
-            return true;
+        // Checked under the lock, as a finishing task signals only after its state has changed.
+        return LockUtils.withLock(stateLock, () -> ExceptionUtils.doUnchecked(() -> {
+          while (!hasStopped()) {
+            long waitMillis = start + waitTime.toMillis() - taskExecutor.currentTimeMillis();
+            if (waitMillis <= 0) {
+              return false;
+            }
+            boolean ignored = stateCondition.await(waitMillis, TimeUnit.MILLISECONDS);
           }
-          LockUtils.withLock(stateLock, () -> ExceptionUtils.doUnchecked(() -> {
-            boolean ignored = stateCondition.await(start - taskExecutor.currentTimeMillis() + waitTime.toMillis(), TimeUnit.MILLISECONDS);
-          }));
-        }
-        return hasStopped();
+          return true;
+        }));
       }
 
       @Override
       public boolean isWorking() {
-        return working;
+        return ScheduledTask.this.isWorking();
+      }
+
+      @Override
+      public long getOverrunsCount() {
+        return taskSchedule == null ? 0 : taskSchedule.getOverrunsCount();
+      }
+
+      @Override
+      public long getSkippedExecutionsCount() {
+        return taskSchedule == null ? 0 : taskSchedule.getSkippedExecutionsCount();
       }
 
     }
@@ -0,0 +1,20 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * Limits how many tasks of the group a `ScheduledTaskExecutor` executes at once. Tasks are put into a group with `NamedTask`.
+ */
+@Data
+@Accessors(chain = true)
+public class TaskGroup {
+
+  private String name;
+  private int maxConcurrency = 1;
+  /**
+   * Maximum number of executions waiting for the group's concurrency. An execution is skipped, when the queue is full. Unbounded, when not
+   * positive.
+   */
+  private int maxQueueSize;
+}
@@ -0,0 +1,99 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs executions of a task group on at most `maxConcurrency` threads of the executor service, queueing the rest.
+ *
+ * <p>A thread takes the group's queued executions one after another, before it is given back to the executor service.
+ */
+@Slf4j
+class TaskGroupBulkhead {
+
+  private final String name;
+  private final int maxConcurrency;
+  private final int maxQueueSize;
+  private final ExecutorService executorService;
+  private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+  private int runningCount;
+
+  private TaskGroupBulkhead(TaskGroup taskGroup, ExecutorService executorService) {
+    this.name = taskGroup.getName();
+    this.maxConcurrency = taskGroup.getMaxConcurrency();
+    this.maxQueueSize = taskGroup.getMaxQueueSize();
+    this.executorService = executorService;
+  }
+
+  static Map<String, TaskGroupBulkhead> of(List<TaskGroup> taskGroups, ExecutorService executorService) {
+    Map<String, TaskGroupBulkhead> result = new HashMap<>();
+    for (TaskGroup taskGroup : taskGroups) {
+      Preconditions.checkArgument(taskGroup.getName() != null, "Every task group has to have a name.");
+      Preconditions.checkArgument(taskGroup.getMaxConcurrency() >= 1, "Max concurrency of task group '%s' has to be at least 1.",
+          taskGroup.getName());
+      Preconditions.checkArgument(result.put(taskGroup.getName(), new TaskGroupBulkhead(taskGroup, executorService)) == null,
+          "Task group '%s' is defined more than once.", taskGroup.getName());
+    }
+    return result;
+  }
+
+  /**
+   * Returns false, when the group's queue is full and the execution was not accepted.
+   */
+  boolean submit(Runnable execution) {
+    synchronized (this) {
+      if (runningCount >= maxConcurrency) {
+        if (maxQueueSize > 0 && queue.size() >= maxQueueSize) {
+          return false;
+        }
+        queue.add(execution);
+        return true;
+      }
+      runningCount++;
+    }
+    try {
+      executorService.submit(() -> run(execution));
+    } catch (RejectedExecutionException e) {
+      synchronized (this) {
+        runningCount--;
+      }
+      throw e;
+    }
+    return true;
+  }
+
+  synchronized int getRunningCount() {
+    return runningCount;
+  }
+
+  synchronized int getQueueSize() {
+    return queue.size();
+  }
+
+  String getName() {
+    return name;
+  }
+
+  private void run(Runnable execution) {
+    Runnable nextExecution = execution;
+    while (nextExecution != null) {
+      try {
+        nextExecution.run();
+      } catch (Throwable t) {
+        log.error(t.getMessage(), t);
+      }
+      synchronized (this) {
+        nextExecution = queue.poll();
+        if (nextExecution == null) {
+          runningCount--;
+        }
+      }
+    }
+  }
+}
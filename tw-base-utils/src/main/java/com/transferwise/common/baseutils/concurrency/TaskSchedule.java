@@ -0,0 +1,20 @@
+package com.transferwise.common.baseutils.concurrency;
+
+/**
+ * Execution times of a periodic task.
+ */
+interface TaskSchedule {
+
+  /**
+   * Called after an execution, which was due at `executionTimeMillis`, has ended.
+   */
+  long nextExecutionTime(long executionTimeMillis, long nowMillis);
+
+  default long getOverrunsCount() {
+    return 0;
+  }
+
+  default long getSkippedExecutionsCount() {
+    return 0;
+  }
+}
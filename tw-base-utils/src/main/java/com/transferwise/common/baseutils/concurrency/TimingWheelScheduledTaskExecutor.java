@@ -0,0 +1,702 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import com.google.common.base.Preconditions;
+import com.transferwise.common.baseutils.ExceptionUtils;
+import com.transferwise.common.baseutils.meters.cache.IMeterCache;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * `ScheduledTaskExecutor` on a hierarchical hashed timing wheel, for a large number of scheduled tasks.
+ *
+ * <p>A task is put into the bucket covering its execution time. Tasks further away than one rotation of a wheel
+ * go to a coarser overflow wheel, and move down to finer wheels when their bucket comes due. Scheduling and stopping a task take
+ * constant time. Only buckets are kept in a delay queue, and there are at most `wheelSize` of those per wheel.
+ *
+ * <p>Execution times are rounded up to the `tick`, so a task is never executed early, but can be late by up to one `tick`.
+ */
+@Slf4j
+public class TimingWheelScheduledTaskExecutor implements ScheduledTaskExecutor {
+
+  private final ExecutorService executorService;
+  @SuppressWarnings("checkstyle:MagicNumber")
+  private Duration tick = Duration.ofMillis(10);
+  @SuppressWarnings("checkstyle:MagicNumber")
+  private int wheelSize = 512;
+  private Clock clock;
+  private final Lock stateLock;
+  private final Condition stateCondition;
+  private final AtomicInteger workingTasksCount;
+  /**
+   * Tasks in the wheel buckets.
+   */
+  private final AtomicInteger wheelTasksCount;
+  private final DelayQueue<Bucket> bucketQueue;
+  /**
+   * Scheduling takes the read lock, advancing the wheel takes the write lock.
+   */
+  private final ReadWriteLock wheelLock;
+  /**
+   * Tasks which became due before the executor was started.
+   */
+  private final ConcurrentLinkedQueue<ScheduledTask> pendingTasks;
+  private volatile TimingWheel wheel;
+
+  private String name;
+  private IMeterCache meterCache;
+  private volatile Map<String, TaskGroupBulkhead> taskGroupBulkheads = Map.of();
+  private volatile ScheduledTaskExecutorMetrics metrics;
+
+  private volatile boolean started;
+  private volatile boolean stopRequested;
+
+  public TimingWheelScheduledTaskExecutor(String threadName, ExecutorService executorService) {
+    if (threadName == null) {
+      this.executorService = executorService;
+    } else {
+      this.executorService = new ThreadNamingExecutorServiceWrapper(threadName, executorService);
+    }
+    clock = Clock.systemUTC();
+    stateLock = new ReentrantLock();
+    stateCondition = stateLock.newCondition();
+    workingTasksCount = new AtomicInteger();
+    wheelTasksCount = new AtomicInteger();
+    bucketQueue = new DelayQueue<>();
+    wheelLock = new ReentrantReadWriteLock();
+    pendingTasks = new ConcurrentLinkedQueue<>();
+    wheel = newWheel();
+  }
+
+  @Override
+  public TaskHandle scheduleAtFixedInterval(Runnable task, Duration initialDelay, Duration period) {
+    return scheduleAtFixedInterval(task, initialDelay, period, new Jitter());
+  }
+
+  @Override
+  public TaskHandle scheduleAtFixedInterval(Runnable task, Duration initialDelay, Duration period, Jitter jitter) {
+    var taskSchedule = new FixedIntervalSchedule(period, jitter.getMaxPeriodJitter());
+    return schedule(new ScheduledTask(this, task, taskSchedule), initialDelay.plusMillis(Jitter.randomMillis(jitter.getMaxInitialJitter())));
+  }
+
+  @Override
+  public TaskHandle scheduleAtFixedRate(Runnable task, Duration initialDelay, Duration period, OverrunPolicy overrunPolicy) {
+    return schedule(new ScheduledTask(this, task, new FixedRateSchedule(period, overrunPolicy)), initialDelay);
+  }
+
+  @Override
+  public TaskHandle scheduleWithCron(Runnable task, String cronExpression, Jitter jitter) {
+    var taskSchedule = new CronSchedule(cronExpression, clock.getZone(), jitter.getMaxPeriodJitter());
+    long nowMillis = currentTimeMillis();
+    long initialDelayMillis = taskSchedule.firstExecutionTime(nowMillis, jitter.getMaxInitialJitter()) - nowMillis;
+    return schedule(new ScheduledTask(this, task, taskSchedule), Duration.ofMillis(initialDelayMillis));
+  }
+
+  @Override
+  public TaskHandle scheduleOnce(Runnable task, Duration initialDelay) {
+    return schedule(new ScheduledTask(this, task, null), initialDelay);
+  }
+
+  /**
+   * Resolution of execution times, and how often the dispatcher checks the clock when nothing is due.
+   */
+  public TimingWheelScheduledTaskExecutor setTick(Duration tick) {
+    Preconditions.checkArgument(tick.toMillis() >= 1, "Tick has to be at least 1 millisecond.");
+    this.tick = tick;
+    return rebuildWheel();
+  }
+
+  /**
+   * Number of buckets in every wheel. One rotation of the finest wheel covers `tick * wheelSize`.
+   */
+  public TimingWheelScheduledTaskExecutor setWheelSize(int wheelSize) {
+    Preconditions.checkArgument(wheelSize >= 2, "Wheel size has to be at least 2.");
+    this.wheelSize = wheelSize;
+    return rebuildWheel();
+  }
+
+  /**
+   * Used for tagging metrics.
+   */
+  public TimingWheelScheduledTaskExecutor setName(String name) {
+    this.name = name;
+    return this;
+  }
+
+  /**
+   * If set, metrics are registered on start. Use `MeterCache` to wrap a `MeterRegistry`.
+   *
+   * <p>Gauges `tw.ste.queue.size` and `tw.ste.working` are tagged with the executor `name`. Timers `tw.ste.dispatch.lag`, which is how late
+   * a task started, and `tw.ste.execution.time`, counters `tw.ste.failed`, `tw.ste.overruns`, `tw.ste.skipped` and `tw.ste.rejected` are tagged
+   * with the `task` name as well. Use `NamedTask` to name the tasks.
+   */
+  public TimingWheelScheduledTaskExecutor setMeterCache(IMeterCache meterCache) {
+    this.meterCache = meterCache;
+    return this;
+  }
+
+  /**
+   * At most `maxConcurrency` tasks of a group are executed at once, so a misbehaving group can not take all the threads of the executor
+   * service. Tasks are put into a group with `NamedTask`. Groups have to be set before scheduling their tasks.
+   */
+  public TimingWheelScheduledTaskExecutor setTaskGroups(List<TaskGroup> taskGroups) {
+    this.taskGroupBulkheads = TaskGroupBulkhead.of(taskGroups, executorService);
+    return this;
+  }
+
+  public TimingWheelScheduledTaskExecutor setClock(Clock clock) {
+    this.clock = clock;
+    return rebuildWheel();
+  }
+
+  @Override
+  public void start() {
+    if (meterCache != null && name == null) {
+      throw new IllegalStateException("Can not start. Name has to be set, when meter cache is set.");
+    }
+    LockUtils.withLock(stateLock, () -> {
+      if (started) {
+        throw new IllegalStateException("Already started.");
+      }
+      if (meterCache != null) {
+        metrics = ScheduledTaskExecutorMetrics.of(meterCache, name, this, TimingWheelScheduledTaskExecutor::getTaskQueueSize,
+            executor -> executor.workingTasksCount.get());
+      }
+      started = true;
+    });
+
+    executorService.submit(() -> {
+      while (!stopRequested) {
+        Bucket bucket;
+        try {
+          bucket = bucketQueue.poll(tick.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          if (stopRequested) {
+            break;
+          } else {
+            throw new RuntimeException(e);
+          }
+        }
+
+        ScheduledTask pendingTask;
+        while ((pendingTask = pendingTasks.poll()) != null && !stopRequested) {
+          pendingTask.dispatchIfQueued();
+        }
+
+        while (bucket != null && !stopRequested) {
+          Bucket expiredBucket = bucket;
+          LockUtils.withLock(wheelLock.writeLock(), () -> {
+            wheel.advanceClock(expiredBucket.getExpirationMillis());
+            expiredBucket.flush(this::addOrSubmit);
+          });
+          bucket = bucketQueue.poll();
+        }
+      }
+    });
+  }
+
+  @Override
+  public void stop() {
+    LockUtils.withLock(stateLock, () -> {
+      stopRequested = true;
+      LockUtils.withLock(wheelLock.writeLock(), () -> {
+        bucketQueue.clear();
+        for (TimingWheel timingWheel = wheel; timingWheel != null; timingWheel = timingWheel.overflowWheel) {
+          for (Bucket bucket : timingWheel.buckets) {
+            bucket.flush(TimingWheelScheduledTaskExecutor::dropFromQueue);
+          }
+        }
+        for (ScheduledTask pendingTask = pendingTasks.poll(); pendingTask != null; pendingTask = pendingTasks.poll()) {
+          dropFromQueue(pendingTask);
+        }
+      });
+      stateCondition.signalAll();
+    });
+  }
+
+  @Override
+  public boolean hasStopped() {
+    return stopRequested && workingTasksCount.get() == 0;
+  }
+
+  @Override
+  public boolean waitUntilStopped(Duration waitTime) {
+    long start = currentTimeMillis();
+    // Checked under the lock, as finishing tasks signal only after the working tasks count has changed.
+    return LockUtils.withLock(stateLock, () -> ExceptionUtils.doUnchecked(() -> {
+      while (!hasStopped()) {
+        long waitMillis = start + waitTime.toMillis() - currentTimeMillis();
+        if (waitMillis <= 0) {
+          return false;
+        }
+        boolean ignored = stateCondition.await(waitMillis, TimeUnit.MILLISECONDS);
+      }
+      return true;
+    }));
+  }
+
+  public int getTaskQueueSize() {
+    return wheelTasksCount.get() + pendingTasks.size();
+  }
+
+  private TimingWheelScheduledTaskExecutor rebuildWheel() {
+    LockUtils.withLock(wheelLock.writeLock(), () -> {
+      if (started || getTaskQueueSize() > 0) {
+        throw new IllegalStateException("Can not change the wheel settings after tasks have been scheduled.");
+      }
+      wheel = newWheel();
+    });
+    return this;
+  }
+
+  private TimingWheel newWheel() {
+    return new TimingWheel(tick.toMillis(), currentTimeMillis());
+  }
+
+  private TaskHandle schedule(ScheduledTask scheduledTask, Duration initialDelay) {
+    if (scheduledTask.state.compareAndSet(ScheduledTaskState.IDLE, ScheduledTaskState.QUEUED)) {
+      scheduleAt(scheduledTask, currentTimeMillis() + initialDelay.toMillis());
+    }
+    return scheduledTask.getTaskHandle();
+  }
+
+  /**
+   * The task has to be in the `QUEUED` state already.
+   *
+   * <p>The stop flag is checked under the wheel lock, so nothing is added after `stop()` has flushed the wheel.
+   */
+  private void scheduleAt(ScheduledTask scheduledTask, long executionTimeMillis) {
+    LockUtils.withLock(wheelLock.readLock(), () -> {
+      if (!stopRequested) {
+        long tickMillis = tick.toMillis();
+        scheduledTask.nextExecutionTime = Math.floorDiv(executionTimeMillis + tickMillis - 1, tickMillis) * tickMillis;
+        addOrSubmit(scheduledTask);
+      }
+    });
+  }
+
+  /**
+   * Has to be called under the wheel lock.
+   */
+  private void addOrSubmit(ScheduledTask scheduledTask) {
+    // A task stopped while in the wheel has given up its entry.
+    if (scheduledTask.state.get() != ScheduledTaskState.QUEUED || wheel.add(scheduledTask)) {
+      return;
+    }
+    if (started) {
+      scheduledTask.dispatchIfQueued();
+    } else {
+      pendingTasks.add(scheduledTask);
+    }
+  }
+
+  /**
+   * A task dropped from the wheel by the executor's stop can still be stopped, or scheduled again by itself.
+   */
+  private static void dropFromQueue(ScheduledTask scheduledTask) {
+    boolean ignored = scheduledTask.state.compareAndSet(ScheduledTaskState.QUEUED, ScheduledTaskState.IDLE);
+  }
+
+  private void onTaskFinished() {
+    if (workingTasksCount.decrementAndGet() == 0 && stopRequested) {
+      LockUtils.withLock(stateLock, stateCondition::signalAll);
+    }
+  }
+
+  private TaskGroupBulkhead getTaskGroupBulkhead(String groupName) {
+    if (groupName == null) {
+      return null;
+    }
+    TaskGroupBulkhead taskGroupBulkhead = taskGroupBulkheads.get(groupName);
+    if (taskGroupBulkhead == null) {
+      throw new IllegalArgumentException("Task group '" + groupName + "' is not defined.");
+    }
+    return taskGroupBulkhead;
+  }
+
+  private long currentTimeMillis() {
+    return clock.millis();
+  }
+
+  private class TimingWheel {
+
+    private final long tickMillis;
+    private final long intervalMillis;
+    private final Bucket[] buckets;
+    private volatile long currentTimeMillis;
+    private volatile TimingWheel overflowWheel;
+
+    private TimingWheel(long tickMillis, long startTimeMillis) {
+      this.tickMillis = tickMillis;
+      this.intervalMillis = tickMillis > Long.MAX_VALUE / wheelSize ? Long.MAX_VALUE : tickMillis * wheelSize;
+      this.currentTimeMillis = startTimeMillis - startTimeMillis % tickMillis;
+      buckets = new Bucket[wheelSize];
+      for (int i = 0; i < wheelSize; i++) {
+        buckets[i] = new Bucket();
+      }
+    }
+
+    /**
+     * Returns false, when the task is already due.
+     */
+    private boolean add(ScheduledTask scheduledTask) {
+      long expirationMillis = scheduledTask.nextExecutionTime;
+      if (expirationMillis < currentTimeMillis + tickMillis) {
+        return false;
+      }
+      if (expirationMillis - currentTimeMillis < intervalMillis) {
+        long virtualId = expirationMillis / tickMillis;
+        Bucket bucket = buckets[(int) (virtualId % buckets.length)];
+        bucket.add(scheduledTask);
+        if (bucket.setExpirationMillis(virtualId * tickMillis)) {
+          bucketQueue.offer(bucket);
+        }
+        return true;
+      }
+      return getOverflowWheel().add(scheduledTask);
+    }
+
+    /**
+     * Has to be called under the write lock.
+     */
+    private void advanceClock(long timeMillis) {
+      if (timeMillis >= currentTimeMillis + tickMillis) {
+        currentTimeMillis = timeMillis - timeMillis % tickMillis;
+        if (overflowWheel != null) {
+          overflowWheel.advanceClock(currentTimeMillis);
+        }
+      }
+    }
+
+    private TimingWheel getOverflowWheel() {
+      if (overflowWheel == null) {
+        synchronized (this) {
+          if (overflowWheel == null) {
+            overflowWheel = new TimingWheel(intervalMillis, currentTimeMillis);
+          }
+        }
+      }
+      return overflowWheel;
+    }
+  }
+
+  /**
+   * Doubly linked list of tasks, where the tasks are the list nodes themselves, so a task can be removed in constant time.
+   */
+  @SuppressFBWarnings("EQ_COMPARETO_USE_OBJECT_EQUALS")
+  private class Bucket implements Delayed {
+
+    private final AtomicLong expirationMillis = new AtomicLong(-1);
+    private ScheduledTask head;
+
+    private synchronized void add(ScheduledTask scheduledTask) {
+      scheduledTask.bucket = this;
+      scheduledTask.previous = null;
+      scheduledTask.next = head;
+      if (head != null) {
+        head.previous = scheduledTask;
+      }
+      head = scheduledTask;
+      wheelTasksCount.incrementAndGet();
+    }
+
+    private synchronized void remove(ScheduledTask scheduledTask) {
+      if (scheduledTask.bucket != this) {
+        return;
+      }
+      if (scheduledTask.previous == null) {
+        head = scheduledTask.next;
+      } else {
+        scheduledTask.previous.next = scheduledTask.next;
+      }
+      if (scheduledTask.next != null) {
+        scheduledTask.next.previous = scheduledTask.previous;
+      }
+      unlink(scheduledTask);
+    }
+
+    /**
+     * Removes all the tasks and gives them to the consumer, which usually puts those into finer wheels or executes.
+     */
+    private synchronized void flush(Consumer<ScheduledTask> consumer) {
+      ScheduledTask scheduledTask = head;
+      head = null;
+      while (scheduledTask != null) {
+        ScheduledTask next = scheduledTask.next;
+        unlink(scheduledTask);
+        consumer.accept(scheduledTask);
+        scheduledTask = next;
+      }
+      expirationMillis.set(-1);
+    }
+
+    private void unlink(ScheduledTask scheduledTask) {
+      scheduledTask.bucket = null;
+      scheduledTask.previous = null;
+      scheduledTask.next = null;
+      wheelTasksCount.decrementAndGet();
+    }
+
+    /**
+     * Returns true, when the expiration changed and the bucket has to be (re)added to the bucket queue.
+     */
+    private boolean setExpirationMillis(long expirationMillis) {
+      return this.expirationMillis.getAndSet(expirationMillis) != expirationMillis;
+    }
+
+    private long getExpirationMillis() {
+      return expirationMillis.get();
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(getExpirationMillis() - currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed o) {
+      return Long.compare(getExpirationMillis(), ((Bucket) o).getExpirationMillis());
+    }
+  }
+
+  /**
+   * Tasks move between the states with compare-and-set, as in `SimpleScheduledTaskExecutor`. The wheel lock is taken only for rescheduling,
+   * and the locks for waiting on a stop only after a stop was requested.
+   */
+  private static class ScheduledTask {
+
+    private final Runnable runnable;
+    private final TaskHandle taskHandle;
+    /**
+     * Not set for tasks executed once.
+     */
+    private final TaskSchedule taskSchedule;
+    private final String name;
+    private final TaskGroupBulkhead taskGroupBulkhead;
+    private volatile ScheduledTaskExecutorMetrics.TaskMetrics taskMetrics;
+    private volatile long nextExecutionTime;
+    private final TimingWheelScheduledTaskExecutor taskExecutor;
+
+    private final Lock stateLock;
+    private final Condition stateCondition;
+
+    private final AtomicReference<ScheduledTaskState> state = new AtomicReference<>(ScheduledTaskState.IDLE);
+
+    /**
+     * Bucket links, guarded by the bucket's monitor.
+     */
+    private volatile Bucket bucket;
+    private ScheduledTask previous;
+    private ScheduledTask next;
+
+    private ScheduledTask(TimingWheelScheduledTaskExecutor taskExecutor, Runnable task, TaskSchedule taskSchedule) {
+      this.runnable = task;
+      this.taskSchedule = taskSchedule;
+      this.name = NamedTask.nameOf(task);
+      this.taskGroupBulkhead = taskExecutor.getTaskGroupBulkhead(NamedTask.groupNameOf(task));
+      this.stateLock = new ReentrantLock();
+      this.stateCondition = stateLock.newCondition();
+      this.taskExecutor = taskExecutor;
+      this.taskHandle = new DefaultTaskHandle();
+    }
+
+    /**
+     * The task can be stopped while the dispatcher is taking it from the wheel, then it is not dispatched.
+     */
+    private void dispatchIfQueued() {
+      if (state.compareAndSet(ScheduledTaskState.QUEUED, ScheduledTaskState.IDLE)) {
+        dispatch();
+      }
+    }
+
+    private void dispatch() {
+      if (taskGroupBulkhead == null) {
+        taskExecutor.executorService.submit(this::execute);
+      } else if (!taskGroupBulkhead.submit(this::execute)) {
+        skipExecution();
+      }
+    }
+
+    /**
+     * The task group's queue is full. A periodic task is rescheduled, as if it was executed.
+     */
+    private void skipExecution() {
+      log.warn("Queue of task group '{}' is full, skipping an execution of task '{}'.", taskGroupBulkhead.getName(), name);
+      var metrics = getTaskMetrics();
+      if (metrics != null) {
+        metrics.registerRejected();
+      }
+      if (taskSchedule != null && state.compareAndSet(ScheduledTaskState.IDLE, ScheduledTaskState.QUEUED)) {
+        taskExecutor.scheduleAt(this, nextExecutionTimeAfterRun());
+      }
+    }
+
+    private void execute() {
+      if (!state.compareAndSet(ScheduledTaskState.IDLE, ScheduledTaskState.RUNNING)) {
+        return;
+      }
+      taskExecutor.workingTasksCount.incrementAndGet();
+      // Checked after counting the task as working, so it does not run after the executor has reported being stopped.
+      if (taskExecutor.stopRequested) {
+        finish();
+        return;
+      }
+
+      long dispatchLagMillis = taskExecutor.currentTimeMillis() - nextExecutionTime;
+      long startTimeNanos = System.nanoTime();
+      boolean failed = false;
+      try {
+        runnable.run();
+      } catch (Throwable t) {
+        failed = true;
+        log.error(t.getMessage(), t);
+      } finally {
+        var metrics = getTaskMetrics();
+        if (metrics != null) {
+          metrics.registerExecution(dispatchLagMillis, System.nanoTime() - startTimeNanos, failed);
+        }
+        finish();
+      }
+    }
+
+    /**
+     * Only the executing thread moves the task out of `RUNNING`, a stop can only move it on to `STOPPING`.
+     */
+    private void finish() {
+      boolean reschedule = taskSchedule != null && !taskExecutor.stopRequested;
+      if (state.compareAndSet(ScheduledTaskState.RUNNING, reschedule ? ScheduledTaskState.QUEUED : ScheduledTaskState.IDLE)) {
+        if (reschedule) {
+          taskExecutor.scheduleAt(this, nextExecutionTimeAfterRun());
+        }
+      } else {
+        state.set(ScheduledTaskState.CANCELLED);
+      }
+      taskExecutor.onTaskFinished();
+      if (stopRequested()) {
+        signalStopped();
+      }
+    }
+
+    private void signalStopped() {
+      LockUtils.withLock(stateLock, stateCondition::signalAll);
+    }
+
+    private long nextExecutionTimeAfterRun() {
+      long overrunsCount = taskSchedule.getOverrunsCount();
+      long skippedExecutionsCount = taskSchedule.getSkippedExecutionsCount();
+      long result = taskSchedule.nextExecutionTime(nextExecutionTime, taskExecutor.currentTimeMillis());
+      var metrics = getTaskMetrics();
+      if (metrics != null) {
+        metrics.registerOverruns(taskSchedule.getOverrunsCount() - overrunsCount, taskSchedule.getSkippedExecutionsCount() - skippedExecutionsCount);
+      }
+      return result;
+    }
+
+    private ScheduledTaskExecutorMetrics.TaskMetrics getTaskMetrics() {
+      if (taskMetrics == null && taskExecutor.metrics != null) {
+        taskMetrics = taskExecutor.metrics.getTaskMetrics(name);
+      }
+      return taskMetrics;
+    }
+
+    public TaskHandle getTaskHandle() {
+      return taskHandle;
+    }
+
+    protected boolean stopRequested() {
+      ScheduledTaskState currentState = state.get();
+      return currentState == ScheduledTaskState.STOPPING || currentState == ScheduledTaskState.CANCELLED || taskExecutor.stopRequested;
+    }
+
+    private boolean isWorking() {
+      ScheduledTaskState currentState = state.get();
+      return currentState == ScheduledTaskState.RUNNING || currentState == ScheduledTaskState.STOPPING;
+    }
+
+    /**
+     * The bucket can change while we are removing, when the dispatcher moves the task into a finer wheel.
+     */
+    private void removeFromBucket() {
+      Bucket currentBucket = bucket;
+      while (currentBucket != null) {
+        currentBucket.remove(this);
+        currentBucket = bucket;
+      }
+    }
+
+    class DefaultTaskHandle implements TaskHandle {
+
+      @Override
+      public void stop() {
+        while (true) {
+          ScheduledTaskState currentState = state.get();
+          if (currentState == ScheduledTaskState.STOPPING || currentState == ScheduledTaskState.CANCELLED) {
+            break;
+          }
+          ScheduledTaskState newState = currentState == ScheduledTaskState.RUNNING ? ScheduledTaskState.STOPPING : ScheduledTaskState.CANCELLED;
+          if (state.compareAndSet(currentState, newState)) {
+            if (currentState == ScheduledTaskState.QUEUED) {
+              removeFromBucket();
+              taskExecutor.pendingTasks.remove(ScheduledTask.this);
+            }
+            break;
+          }
+        }
+        signalStopped();
+      }
+
+      @Override
+      public boolean hasStopped() {
+        return stopRequested() && !ScheduledTask.this.isWorking();
+      }
+
+      @Override
+      public boolean waitUntilStopped(Duration waitTime) {
+        long start = taskExecutor.currentTimeMillis();
+        // Checked under the lock, as a finishing task signals only after its state has changed.
+        return LockUtils.withLock(stateLock, () -> ExceptionUtils.doUnchecked(() -> {
+          while (!hasStopped()) {
+            long waitMillis = start + waitTime.toMillis() - taskExecutor.currentTimeMillis();
+            if (waitMillis <= 0) {
+              return false;
+            }
+            boolean ignored = stateCondition.await(waitMillis, TimeUnit.MILLISECONDS);
+          }
+          return true;
+        }));
+      }
+
+      @Override
+      public boolean isWorking() {
+        return ScheduledTask.this.isWorking();
+      }
+
+      @Override
+      public long getOverrunsCount() {
+        return taskSchedule == null ? 0 : taskSchedule.getOverrunsCount();
+      }
+
+      @Override
+      public long getSkippedExecutionsCount() {
+        return taskSchedule == null ? 0 : taskSchedule.getSkippedExecutionsCount();
+      }
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket following the current settings of a `RateLimit`.
+ *
+ * <p>The bucket starts full. Tokens are refilled lazily, based on the time passed since the last refill.
+ */
+class TokenBucket {
+
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final RateLimit rateLimit;
+  private double tokens;
+  private long refillTimeNanos;
+
+  TokenBucket(RateLimit rateLimit, long nowNanos) {
+    this.rateLimit = rateLimit;
+    this.tokens = rateLimit.getBurst();
+    this.refillTimeNanos = nowNanos;
+  }
+
+  /**
+   * Takes a permit and returns 0, or returns nanoseconds until the next permit is available, without taking it.
+   */
+  synchronized long tryAcquire(long nowNanos) {
+    refill(nowNanos);
+    if (tokens >= 1) {
+      tokens -= 1;
+      return 0;
+    }
+    return nanosFor(1 - tokens);
+  }
+
+  /**
+   * Takes a permit, even if it is due only in the future, and returns nanoseconds until it is due.
+   *
+   * <p>Later reservations queue up behind the earlier ones.
+   */
+  synchronized long reserve(long nowNanos) {
+    refill(nowNanos);
+    tokens -= 1;
+    return tokens >= 0 ? 0 : nanosFor(-tokens);
+  }
+
+  synchronized long nanosUntilPermit(long nowNanos) {
+    refill(nowNanos);
+    return tokens >= 1 ? 0 : nanosFor(1 - tokens);
+  }
+
+  /**
+   * Gives back a permit, which was taken but not used.
+   */
+  synchronized void release() {
+    tokens = Math.min(rateLimit.getBurst(), tokens + 1);
+  }
+
+  /**
+   * A full bucket behaves the same as a new one, so it can be dropped.
+   */
+  synchronized boolean isFull(long nowNanos) {
+    refill(nowNanos);
+    return tokens >= rateLimit.getBurst();
+  }
+
+  private void refill(long nowNanos) {
+    long elapsedNanos = nowNanos - refillTimeNanos;
+    if (elapsedNanos > 0) {
+      tokens = Math.min(rateLimit.getBurst(), tokens + elapsedNanos * rateLimit.getPermitsPerSecond() / NANOS_PER_SECOND);
+      refillTimeNanos = nowNanos;
+    }
+  }
+
+  private long nanosFor(double missingTokens) {
+    return (long) Math.ceil(missingTokens * NANOS_PER_SECOND / rateLimit.getPermitsPerSecond());
+  }
+}
@@ -0,0 +1,54 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class AimdConcurrencyLimitTest {
+
+  private static final long FAST = Duration.ofMillis(1).toNanos();
+  private static final long SLOW = Duration.ofMillis(200).toNanos();
+
+  @Test
+  void limitDecreasesOnFailuresAndSlowProcessing() {
+    var limit = new AimdConcurrencyLimit(2, 10, 20).setLatencyThreshold(Duration.ofMillis(100)).setBackoffRatio(0.5);
+
+    limit.onSample(FAST, 10, true);
+    assertEquals(5, limit.getLimit());
+
+    limit.onSample(SLOW, 5, false);
+    assertEquals(2, limit.getLimit());
+
+    limit.onSample(SLOW, 2, false);
+    assertEquals(2, limit.getLimit());
+  }
+
+  @Test
+  void limitIncreasesWhenUsedAndProcessingIsFast() {
+    var limit = new AimdConcurrencyLimit(1, 4, 5).setLatencyThreshold(Duration.ofMillis(100));
+
+    // Not increasing, when the limit is not actually used.
+    for (int i = 0; i < 10; i++) {
+      limit.onSample(FAST, 1, false);
+    }
+    assertEquals(4, limit.getLimit());
+
+    for (int i = 0; i < 4; i++) {
+      limit.onSample(FAST, 4, false);
+    }
+    assertEquals(5, limit.getLimit());
+
+    for (int i = 0; i < 100; i++) {
+      limit.onSample(FAST, 5, false);
+    }
+    assertEquals(5, limit.getLimit());
+  }
+
+  @Test
+  void limitsAreValidated() {
+    assertThrows(IllegalArgumentException.class, () -> new AimdConcurrencyLimit(0, 1, 2));
+    assertThrows(IllegalArgumentException.class, () -> new AimdConcurrencyLimit(2, 1, 3));
+  }
+}
@@ -0,0 +1,91 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.Test;
+
+public class CronExpressionTest {
+
+  private static final ZoneId UTC = ZoneOffset.UTC;
+
+  @Test
+  void nextTimeIsTheFirstMatchingTimeAfterTheGivenTime() {
+    var cronExpression = CronExpression.parse("*/15 * * * *");
+
+    assertEquals("2026-01-01T10:15:00Z", next(cronExpression, "2026-01-01T10:00:00Z", UTC));
+    assertEquals("2026-01-01T10:15:00Z", next(cronExpression, "2026-01-01T10:14:59.999Z", UTC));
+    assertEquals("2026-01-01T11:00:00Z", next(cronExpression, "2026-01-01T10:45:00Z", UTC));
+    assertEquals("2026-01-02T00:00:00Z", next(cronExpression, "2026-01-01T23:59:00Z", UTC));
+  }
+
+  @Test
+  void secondsFieldIsOptional() {
+    assertEquals("2026-01-01T10:00:30Z", next(CronExpression.parse("30 * * * * *"), "2026-01-01T10:00:00Z", UTC));
+    assertEquals("2026-01-01T10:00:10Z", next(CronExpression.parse("*/10 * * * * ?"), "2026-01-01T10:00:05Z", UTC));
+  }
+
+  @Test
+  void rangesListsAndNamesAreSupported() {
+    // Thursday, 2026-01-01.
+    var cronExpression = CronExpression.parse("0 9-17/4 * jan,MAR mon-fri");
+
+    assertEquals("2026-01-01T13:00:00Z", next(cronExpression, "2026-01-01T09:00:00Z", UTC));
+    assertEquals("2026-01-02T09:00:00Z", next(cronExpression, "2026-01-01T17:00:00Z", UTC));
+    assertEquals("2026-01-05T09:00:00Z", next(cronExpression, "2026-01-02T17:00:00Z", UTC));
+    assertEquals("2026-03-02T09:00:00Z", next(cronExpression, "2026-01-30T17:00:00Z", UTC));
+    assertEquals("2026-01-04T00:00:00Z", next(CronExpression.parse("0 0 * * 7"), "2026-01-01T00:00:00Z", UTC));
+  }
+
+  @Test
+  void restrictedDayOfMonthAndDayOfWeekMatchEither() {
+    var cronExpression = CronExpression.parse("0 0 13 * fri");
+
+    assertEquals("2026-01-02T00:00:00Z", next(cronExpression, "2026-01-01T00:00:00Z", UTC));
+    assertEquals("2026-01-13T00:00:00Z", next(cronExpression, "2026-01-09T00:00:00Z", UTC));
+  }
+
+  @Test
+  void macrosAreSupported() {
+    assertEquals("2027-01-01T00:00:00Z", next(CronExpression.parse("@yearly"), "2026-01-01T00:00:00Z", UTC));
+    assertEquals("2026-01-01T01:00:00Z", next(CronExpression.parse("@hourly"), "2026-01-01T00:00:00Z", UTC));
+  }
+
+  @Test
+  void leapDaysAreFound() {
+    assertEquals("2028-02-29T00:00:00Z", next(CronExpression.parse("0 0 29 2 *"), "2026-01-01T00:00:00Z", UTC));
+  }
+
+  @Test
+  void timeZoneIsRespected() {
+    var london = ZoneId.of("Europe/London");
+    var cronExpression = CronExpression.parse("30 1 * * *");
+
+    assertEquals("2026-07-01T00:30:00Z", next(cronExpression, "2026-06-30T12:00:00Z", london));
+    // Clocks go from 01:00 to 02:00 on 2026-03-29, the skipped time is moved forward.
+    assertEquals("2026-03-29T01:30:00Z", next(cronExpression, "2026-03-28T12:00:00Z", london));
+    // Clocks go from 02:00 back to 01:00 on 2026-10-25, the repeated time matches once.
+    long first = CronExpression.parse("30 1 * * *").nextTime(Instant.parse("2026-10-24T12:00:00Z").toEpochMilli(), london);
+    assertEquals(Instant.parse("2026-10-25T00:30:00Z").toEpochMilli(), first);
+    long second = cronExpression.nextTime(first, london);
+    assertTrue(second - first > Duration.ofHours(23).toMillis());
+  }
+
+  @Test
+  void invalidExpressionsAreRejected() {
+    assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("* * * *"));
+    assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("60 * * * *"));
+    assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("*/0 * * * *"));
+    assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("0 0 * foo *"));
+    assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("0 0 30 2 *"));
+  }
+
+  private static String next(CronExpression cronExpression, String after, ZoneId zoneId) {
+    return Instant.ofEpochMilli(cronExpression.nextTime(Instant.parse(after).toEpochMilli(), zoneId)).toString();
+  }
+}
@@ -3,21 +3,38 @@ package com.transferwise.common.baseutils.concurrency;
 import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.google.common.base.Preconditions;
+import com.transferwise.common.baseutils.BaseTest;
 import com.transferwise.common.baseutils.ExceptionUtils;
+import com.transferwise.common.baseutils.clock.TestClock;
+import com.transferwise.common.baseutils.meters.cache.MeterCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-public class DiscardingQueueProcessorTest {
+public class DiscardingQueueProcessorTest extends BaseTest {
 
   private ExecutorService executorService;
   private DiscardingQueueProcessor<String, String> processor;
@@ -29,14 +46,7 @@ public class DiscardingQueueProcessorTest {
     results = Collections.synchronizedList(new ArrayList<>());
     errors = Collections.synchronizedList(new ArrayList<>());
     executorService = Executors.newCachedThreadPool();
-    processor = new DiscardingQueueProcessor<>(executorService, payload -> results.add(payload.getData())) {
-      @Override
-      public void onError(Throwable t) {
-        errors.add(t);
-      }
-    };
-    processor.setSoftQueueLimit(5);
-    processor.setHardQueueLimit(10);
+    processor = createProcessor();
 
     processor.start();
   }
@@ -102,6 +112,369 @@ public class DiscardingQueueProcessorTest {
     await().until(() -> results.size(), equalTo(10));
   }
 
+  @Test
+  void hardQueueLimitCanNotBeIncreasedAboveAllocatedQueue() {
+    var latch = new CountDownLatch(1);
+
+    processor.setProcessor(payload -> {
+      awaitOrThrow(latch);
+      results.add(payload.getData());
+    });
+    processor.setSoftLimitPredicate(data -> false);
+
+    assertThrows(IllegalStateException.class, () -> processor.setHardQueueLimit(100));
+    processor.setHardQueueLimit(5);
+    for (var i = 0; i < 10; i++) {
+      processor.schedule(String.valueOf(i));
+    }
+    latch.countDown();
+
+    await().until(() -> results.size(), equalTo(5));
+  }
+
+  @Test
+  void producerCanWaitForQueueCapacity() throws Exception {
+    var latch = new CountDownLatch(1);
+
+    recreateProcessor(p -> p.setBackpressurePolicy(DiscardingQueueProcessor.BackpressurePolicy.BLOCK)
+        .setProcessor(payload -> {
+          awaitOrThrow(latch);
+          results.add(payload.getData());
+        }));
+
+    for (var i = 0; i < 10; i++) {
+      assertThat(processor.schedule(String.valueOf(i)).isScheduled(), equalTo(true));
+    }
+
+    var discardedResult = processor.schedule("discarded", Duration.ofMillis(100));
+    assertThat(discardedResult.getDiscardReason(), equalTo(DiscardingQueueProcessor.DiscardReason.HARD_LIMIT));
+    assertThat(discardedResult.getWaitTime().compareTo(Duration.ofMillis(100)) >= 0, equalTo(true));
+
+    var waitingProducer = Executors.newSingleThreadExecutor();
+    try {
+      var producerThread = new AtomicReference<Thread>();
+      var resultFuture = waitingProducer.submit(() -> {
+        producerThread.set(Thread.currentThread());
+        return processor.schedule("waited");
+      });
+      await().until(() -> producerThread.get() != null && (producerThread.get().getState() == Thread.State.WAITING
+          || producerThread.get().getState() == Thread.State.TIMED_WAITING));
+      assertThat(resultFuture.isDone(), equalTo(false));
+
+      latch.countDown();
+      var result = resultFuture.get(10, TimeUnit.SECONDS);
+      assertThat(result.isScheduled(), equalTo(true));
+      assertThat(result.getWaitTime().compareTo(Duration.ZERO) > 0, equalTo(true));
+    } finally {
+      waitingProducer.shutdown();
+    }
+
+    await().until(() -> results.size(), equalTo(11));
+    assertThat(results.contains("waited"), equalTo(true));
+  }
+
+  @Test
+  void asyncSchedulingCompletesWithProcessingOutcome() throws Exception {
+    var latch = new CountDownLatch(1);
+
+    recreateProcessor(p -> p.setMaxConcurrency(1)
+        .setQueueTimeout(Duration.ofSeconds(1))
+        .setProcessor(payload -> {
+          awaitOrThrow(latch);
+          results.add(payload.getData());
+        }));
+
+    var processedFuture = processor.scheduleAsync("processed");
+    var resultFuture = processor.scheduleAsync("result", String::length);
+    var failedFuture = processor.scheduleAsync("failed", data -> {
+      throw new IllegalArgumentException("Processing failed.");
+    });
+    for (var i = 0; i < 7; i++) {
+      processor.schedule(String.valueOf(i));
+    }
+    var discardedFuture = processor.scheduleAsync("discarded");
+    latch.countDown();
+
+    assertThat(processedFuture.get(10, TimeUnit.SECONDS), equalTo(null));
+    assertThat(results.get(0), equalTo("processed"));
+    assertThat(resultFuture.get(10, TimeUnit.SECONDS), equalTo(6));
+    var failure = assertThrows(ExecutionException.class, () -> failedFuture.get(10, TimeUnit.SECONDS));
+    assertThat(failure.getCause().getMessage(), equalTo("Processing failed."));
+    failure = assertThrows(ExecutionException.class, () -> discardedFuture.get(10, TimeUnit.SECONDS));
+    assertThat(failure.getCause() instanceof RejectedExecutionException, equalTo(true));
+    assertThat(errors.isEmpty(), equalTo(true));
+  }
+
+  @Test
+  void asyncSchedulingCompletesExceptionallyOnTimeout() {
+    var testClock = TestClock.createAndRegister();
+    var latch = new CountDownLatch(1);
+    var processingStarted = new CountDownLatch(1);
+
+    recreateProcessor(p -> p.setMaxConcurrency(1)
+        .setQueueTimeout(Duration.ofSeconds(1))
+        .setProcessor(payload -> {
+          processingStarted.countDown();
+          awaitOrThrow(latch);
+          results.add(payload.getData());
+        }));
+
+    processor.schedule("blocking");
+    // The clock can be moved only after the blocking payload has passed its queue timeout check.
+    awaitOrThrow(processingStarted);
+    var timedOutFuture = processor.scheduleAsync("timedOut");
+    testClock.tick(Duration.ofSeconds(2));
+    latch.countDown();
+
+    var failure = assertThrows(ExecutionException.class, () -> timedOutFuture.get(10, TimeUnit.SECONDS));
+    assertThat(failure.getCause() instanceof TimeoutException, equalTo(true));
+  }
+
+  @Test
+  void lanesHaveOwnLimitsAndAreServedByWeights() {
+    var latch = new CountDownLatch(1);
+
+    recreateProcessor(p -> p.setMaxConcurrency(1)
+        .setLanes(List.of(new DiscardingQueueProcessor.Lane().setName("interactive").setWeight(3),
+            new DiscardingQueueProcessor.Lane().setName("bulk").setQueueLimit(5)))
+        .setLaneSelector(data -> data.startsWith("bulk") ? "bulk" : null)
+        .setProcessor(payload -> {
+          awaitOrThrow(latch);
+          results.add(payload.getData());
+        }));
+
+    processor.schedule("blocking");
+    await().until(() -> processor.getConcurrency(), equalTo(1));
+
+    var laneDiscardedCount = 0;
+    for (var i = 0; i < 8; i++) {
+      if (processor.schedule("bulk" + i).getDiscardReason() == DiscardingQueueProcessor.DiscardReason.LANE_LIMIT) {
+        laneDiscardedCount++;
+      }
+    }
+    assertThat(laneDiscardedCount, equalTo(3));
+    assertThat(processor.getLaneQueueSize("bulk"), equalTo(5));
+
+    for (var i = 0; i < 4; i++) {
+      assertThat(processor.schedule("interactive" + i).isScheduled(), equalTo(true));
+    }
+    assertThat(processor.getLaneQueueSize("interactive"), equalTo(5));
+    latch.countDown();
+
+    await().until(() -> results.size(), equalTo(10));
+    // Interactive lane gets 3 turns out of every 4, even when bulk payloads were scheduled first.
+    assertThat(results.subList(1, 5).stream().filter(data -> data.startsWith("interactive")).count() >= 3, equalTo(true));
+    await().until(() -> processor.getLaneQueueSize("bulk"), equalTo(0));
+  }
+
+  @Test
+  void newDataIsShedWhileQueueDelayStaysAboveTarget() {
+    var testClock = TestClock.createAndRegister();
+    var latch = new CountDownLatch(1);
+
+    recreateProcessor(p -> p.setMaxConcurrency(1)
+        .setSheddingTargetDelay(Duration.ofSeconds(1))
+        .setSheddingInterval(Duration.ofSeconds(2))
+        .setSoftLimitPredicate(data -> !data.startsWith("important"))
+        .setProcessor(payload -> {
+          awaitOrThrow(latch);
+          if (payload.getData().startsWith("slow")) {
+            testClock.tick(Duration.ofSeconds(1));
+          }
+          results.add(payload.getData());
+        }));
+
+    processor.schedule("blocking");
+    await().until(() -> processor.getConcurrency(), equalTo(1));
+    for (var i = 0; i < 3; i++) {
+      processor.schedule("slow" + i);
+    }
+    testClock.tick(Duration.ofSeconds(3));
+    latch.countDown();
+    await().until(() -> results.size(), equalTo(4));
+
+    assertThat(processor.schedule("new").getDiscardReason(), equalTo(DiscardingQueueProcessor.DiscardReason.QUEUE_DELAY));
+    assertThat(processor.schedule("important").isScheduled(), equalTo(true));
+    await().until(() -> results.size(), equalTo(5));
+
+    // Taking a payload below the target delay ends the overload.
+    assertThat(processor.schedule("later").isScheduled(), equalTo(true));
+    await().until(() -> results.size(), equalTo(6));
+  }
+
+  @Test
+  void payloadsAreTakenAtLimitedRate() {
+    var rateLimit = new RateLimit(10, 2);
+    recreateProcessor(p -> p.setRateLimit(rateLimit));
+
+    for (var i = 0; i < 6; i++) {
+      processor.schedule(String.valueOf(i));
+    }
+    // Burst of 2 and then 4 payloads at 100ms intervals, with some slack for the timer resolution.
+    await().atLeast(Duration.ofMillis(300)).until(() -> results.size(), equalTo(6));
+    await().until(() -> processor.getConcurrency(), equalTo(0));
+
+    rateLimit.setPermitsPerSecond(1000);
+    for (var i = 0; i < 10; i++) {
+      processor.schedule(String.valueOf(i));
+    }
+    await().until(() -> results.size(), equalTo(16));
+  }
+
+  @Test
+  void keysOverTheirRateDoNotHoldUpOtherKeys() {
+    recreateProcessor(p -> p.setMaxConcurrency(1)
+        .setKeyRateLimit(new RateLimit(5))
+        .setRateLimitKeyExtractor(data -> data.substring(0, 1)));
+
+    for (var key : List.of("a", "b")) {
+      for (var i = 0; i < 3; i++) {
+        processor.schedule(key + i);
+      }
+    }
+    // The third payloads of both keys are due after 400ms.
+    await().atLeast(Duration.ofMillis(300)).until(() -> results.size(), equalTo(6));
+
+    assertThat(results.indexOf("b0") < results.indexOf("a1"), equalTo(true));
+    assertThat(results.indexOf("a1") < results.indexOf("a2"), equalTo(true));
+    assertThat(results.indexOf("b1") < results.indexOf("b2"), equalTo(true));
+    await().until(() -> processor.getQueueSize(), equalTo(0));
+  }
+
+  @Test
+  void payloadsAboveHardLimitOverflowToDiskInOrder() throws Exception {
+    var latch = new CountDownLatch(1);
+    var overflowDirectory = Files.createTempDirectory("dqp-test");
+
+    recreateProcessor(p -> p.setMaxConcurrency(1)
+        .setOverflowCodec(new PayloadCodec<>() {
+          @Override
+          public byte[] encode(String data) {
+            return data.getBytes(StandardCharsets.UTF_8);
+          }
+
+          @Override
+          public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+          }
+        })
+        .setOverflowDirectory(overflowDirectory)
+        .setOverflowSegmentBytes(64)
+        .setProcessor(payload -> {
+          awaitOrThrow(latch);
+          results.add(payload.getData());
+        }));
+
+    var overflowedCount = 0;
+    for (var i = 0; i < 30; i++) {
+      var result = processor.schedule(String.valueOf(i));
+      assertThat(result.isScheduled(), equalTo(true));
+      if (result.isOverflowed()) {
+        overflowedCount++;
+      }
+    }
+    assertThat(overflowedCount, equalTo(20));
+    assertThat(processor.getOverflowSize(), equalTo(20L));
+    latch.countDown();
+
+    await().until(() -> results.size(), equalTo(30));
+    for (var i = 0; i < 30; i++) {
+      assertThat(results.get(i), equalTo(String.valueOf(i)));
+    }
+    assertThat(processor.getOverflowSize(), equalTo(0L));
+
+    processor.stop();
+    await().until(() -> {
+      try (var files = Files.list(overflowDirectory)) {
+        return files.count();
+      }
+    }, equalTo(0L));
+    Files.delete(overflowDirectory);
+  }
+
+  @Test
+  void schedulingWhileStoppingDoesNotLoseOverflowedData() throws Exception {
+    var overflowDirectory = Files.createTempDirectory("dqp-test");
+
+    recreateProcessor(p -> p.setMaxConcurrency(1)
+        .setOverflowCodec(new PayloadCodec<>() {
+          @Override
+          public byte[] encode(String data) {
+            return data.getBytes(StandardCharsets.UTF_8);
+          }
+
+          @Override
+          public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+          }
+        })
+        .setOverflowDirectory(overflowDirectory)
+        .setOverflowSegmentBytes(64));
+
+    var scheduledCount = new AtomicInteger();
+    var producing = new CountDownLatch(1);
+    var producer = Executors.newSingleThreadExecutor();
+    try {
+      var producerFuture = producer.submit(() -> {
+        for (var i = 0; i < 10_000; i++) {
+          if (processor.schedule(String.valueOf(i)).isScheduled()) {
+            scheduledCount.incrementAndGet();
+          }
+          if (i == 100) {
+            producing.countDown();
+          }
+        }
+      });
+      awaitOrThrow(producing);
+      processor.stop();
+      producerFuture.get(10, TimeUnit.SECONDS);
+    } finally {
+      producer.shutdown();
+    }
+    processor.getStoppedFuture().get(10, TimeUnit.SECONDS);
+
+    var drained = new ArrayList<String>();
+    processor.drainTo(drained);
+    assertThat(results.size() + drained.size(), equalTo(scheduledCount.get()));
+    try (var files = Files.list(overflowDirectory)) {
+      assertThat(files.count(), equalTo(0L));
+    }
+    Files.delete(overflowDirectory);
+  }
+
+  @Test
+  void stopWithDeadlineLeavesUnprocessedDataForDraining() throws Exception {
+    var latch = new CountDownLatch(1);
+
+    recreateProcessor(p -> p.setMaxConcurrency(2)
+        .setProcessor(payload -> {
+          awaitOrThrow(latch);
+          results.add(payload.getData());
+        }));
+
+    for (var i = 0; i < 9; i++) {
+      processor.schedule(String.valueOf(i));
+    }
+    var asyncResult = processor.scheduleAsync("async");
+    await().until(() -> processor.getConcurrency(), equalTo(2));
+
+    var stoppedFuture = processor.stop(Duration.ZERO);
+    assertThat(stoppedFuture.isDone(), equalTo(false));
+    // Payloads in progress are still waited for.
+    latch.countDown();
+    stoppedFuture.get(10, TimeUnit.SECONDS);
+    assertThat(processor.hasStopped(), equalTo(true));
+    assertThat(processor.getStoppedFuture().isDone(), equalTo(true));
+    assertThat(results.size(), equalTo(2));
+    assertThat(results.containsAll(List.of("0", "1")), equalTo(true));
+
+    var drained = new ArrayList<String>();
+    assertThat(processor.drainTo(drained), equalTo(8));
+    assertThat(processor.getQueueSize(), equalTo(0));
+    assertThat(drained, equalTo(List.of("2", "3", "4", "5", "6", "7", "8", "async")));
+    assertThat(asyncResult.isCancelled(), equalTo(true));
+  }
+
   @Test
   void processorErrorsWillNotStopProcessing() {
     var latch = new CountDownLatch(20);
@@ -135,6 +508,286 @@ public class DiscardingQueueProcessorTest {
     await().until(() -> results.size(), equalTo(10));
   }
 
+  @Test
+  void payloadsCanBeProcessedInBatches() {
+    List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+    processor.setMaxBatchSize(4);
+    processor.setMaxLinger(Duration.ofMillis(500));
+    processor.setBatchProcessor(batch -> {
+      batchSizes.add(batch.size());
+      batch.forEach(payload -> results.add(payload.getData()));
+    });
+
+    for (var i = 0; i < 10; i++) {
+      processor.schedule(String.valueOf(i));
+    }
+
+    await().until(() -> results.size(), equalTo(10));
+    assertThat(batchSizes, equalTo(List.of(4, 4, 2)));
+    await().until(() -> processor.getQueueSize(), equalTo(0));
+  }
+
+  @Test
+  void workersTakePayloadsDirectlyFromQueue() {
+    var inProgress = new AtomicInteger();
+    var maxInProgress = new AtomicInteger();
+
+    recreateProcessor(p -> p.setExecutionMode(DiscardingQueueProcessor.ExecutionMode.WORKERS)
+        .setMaxConcurrency(2)
+        .setHardQueueLimit(100)
+        .setProcessor(payload -> {
+          maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+          ExceptionUtils.doUnchecked(() -> Thread.sleep(1));
+          inProgress.decrementAndGet();
+          results.add(payload.getData());
+        }));
+
+    for (var i = 0; i < 50; i++) {
+      assertThat(processor.schedule(String.valueOf(i)).isScheduled(), equalTo(true));
+    }
+
+    await().until(() -> results.size(), equalTo(50));
+    assertThat(maxInProgress.get() <= 2, equalTo(true));
+    await().until(() -> processor.getQueueSize(), equalTo(0));
+  }
+
+  @Test
+  void virtualThreadsModeRunsManyPayloadsAtOnce() {
+    var latch = new CountDownLatch(1);
+    var virtualThreadsCount = new AtomicInteger();
+
+    recreateProcessor(p -> p.setExecutionMode(DiscardingQueueProcessor.ExecutionMode.VIRTUAL_THREADS)
+        .setMaxConcurrency(10)
+        .setProcessor(payload -> {
+          if (isVirtual(Thread.currentThread())) {
+            virtualThreadsCount.incrementAndGet();
+          }
+          awaitOrThrow(latch);
+          results.add(payload.getData());
+        }));
+
+    for (var i = 0; i < 10; i++) {
+      processor.schedule(String.valueOf(i));
+    }
+    await().until(() -> processor.getConcurrency(), equalTo(10));
+    latch.countDown();
+
+    await().until(() -> results.size(), equalTo(10));
+    assertThat(virtualThreadsCount.get(), equalTo(VirtualThreads.isAvailable() ? 10 : 0));
+  }
+
+  @Test
+  void payloadsWithTheSameOrderingKeyAreProcessedInOrder() {
+    var inProgress = new AtomicInteger();
+    var maxInProgress = new AtomicInteger();
+    Map<String, List<String>> resultsByKey = new ConcurrentHashMap<>();
+
+    recreateProcessor(p -> p.setOrderingKeyExtractor(data -> data.substring(0, 1))
+        .setMaxConcurrency(4)
+        .setHardQueueLimit(100)
+        .setProcessor(payload -> {
+          maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+          ExceptionUtils.doUnchecked(() -> Thread.sleep(ThreadLocalRandom.current().nextInt(3)));
+          inProgress.decrementAndGet();
+          resultsByKey.computeIfAbsent(payload.getData().substring(0, 1), k -> Collections.synchronizedList(new ArrayList<>()))
+              .add(payload.getData());
+          results.add(payload.getData());
+        }));
+
+    for (var i = 0; i < 20; i++) {
+      for (var key : List.of("a", "b", "c", "d")) {
+        processor.schedule(key + i);
+      }
+    }
+
+    await().until(() -> results.size(), equalTo(80));
+    for (var key : List.of("a", "b", "c", "d")) {
+      var expected = new ArrayList<String>();
+      for (var i = 0; i < 20; i++) {
+        expected.add(key + i);
+      }
+      assertThat(resultsByKey.get(key), equalTo(expected));
+    }
+    assertThat(maxInProgress.get() > 1, equalTo(true));
+    await().until(() -> processor.getQueueSize(), equalTo(0));
+  }
+
+  @Test
+  void adaptiveConcurrencyLimitBacksOffOnSlowProcessing() {
+    var limit = new AimdConcurrencyLimit(1, 4, 8).setLatencyThreshold(Duration.ofMillis(20));
+
+    recreateProcessor(p -> p.setExecutionMode(DiscardingQueueProcessor.ExecutionMode.WORKERS)
+        .setAdaptiveConcurrencyLimit(limit)
+        .setHardQueueLimit(100)
+        .setProcessor(payload -> {
+          if (payload.getData().startsWith("slow")) {
+            ExceptionUtils.doUnchecked(() -> Thread.sleep(30));
+          }
+          results.add(payload.getData());
+        }));
+
+    for (var i = 0; i < 8; i++) {
+      processor.schedule("slow" + i);
+    }
+    await().until(() -> results.size(), equalTo(8));
+    await().until(() -> processor.getConcurrencyLimit(), equalTo(1));
+
+    for (var i = 0; i < 50; i++) {
+      processor.schedule("fast" + i);
+    }
+    await().until(() -> results.size(), equalTo(58));
+    assertThat(processor.getConcurrencyLimit() <= 8, equalTo(true));
+  }
+
+  @Test
+  void metricsAreRegistered() {
+    var meterRegistry = new SimpleMeterRegistry();
+    var latch = new CountDownLatch(1);
+
+    recreateProcessor(p -> p.setName("test")
+        .setMeterCache(new MeterCache(meterRegistry))
+        .setSoftLimitPredicate(data -> true)
+        .setProcessor(payload -> {
+          awaitOrThrow(latch);
+          if ("fail".equals(payload.getData())) {
+            throw new RuntimeException("Processing failed.");
+          }
+          results.add(payload.getData());
+        }));
+
+    for (var data : List.of("0", "1", "2", "3", "fail", "discarded")) {
+      processor.schedule(data);
+    }
+    latch.countDown();
+
+    await().until(() -> results.size(), equalTo(4));
+    await().until(() -> meterRegistry.get("tw.dqp.processing.time").tag("processor", "test").timer().count(), equalTo(5L));
+    assertThat(meterRegistry.get("tw.dqp.scheduled").tag("processor", "test").counter().count(), equalTo(5d));
+    assertThat(meterRegistry.get("tw.dqp.discarded").tag("processor", "test").tag("reason", "SOFT_LIMIT").counter().count(), equalTo(1d));
+    assertThat(meterRegistry.get("tw.dqp.failed").tag("processor", "test").counter().count(), equalTo(1d));
+    assertThat(meterRegistry.get("tw.dqp.queue.time").tag("processor", "test").timer().count(), equalTo(5L));
+    await().until(() -> meterRegistry.get("tw.dqp.queue.size").tag("processor", "test").gauge().value(), equalTo(0d));
+  }
+
+  @Test
+  void metricsFollowTheProcessorStartedLast() {
+    var meterRegistry = new SimpleMeterRegistry();
+    var meterCache = new MeterCache(meterRegistry);
+    var latch = new CountDownLatch(1);
+
+    recreateProcessor(p -> p.setName("test")
+        .setMeterCache(meterCache)
+        .setMaxConcurrency(1)
+        .setProcessor(payload -> awaitOrThrow(latch)));
+    var firstProcessor = processor;
+    processor.schedule("0");
+    processor.schedule("1");
+    assertThat(queueSizeGauge(meterRegistry), equalTo(2d));
+
+    // The first processor keeps its payloads, while the gauge moves over to the new one.
+    recreateProcessor(p -> p.setName("test").setMeterCache(meterCache));
+    assertThat(firstProcessor.getQueueSize(), equalTo(2));
+    assertThat(queueSizeGauge(meterRegistry), equalTo(0d));
+
+    meterCache.clear();
+    recreateProcessor(p -> p.setName("test").setMeterCache(meterCache).setMaxConcurrency(1).setProcessor(payload -> awaitOrThrow(latch)));
+    processor.schedule("0");
+    assertThat(queueSizeGauge(meterRegistry), equalTo(1d));
+    latch.countDown();
+  }
+
+  @Test
+  void timedOutPayloadsAreSweptFromQueueHead() {
+    var testClock = TestClock.createAndRegister();
+    var timedOutBatches = Collections.synchronizedList(new ArrayList<List<String>>());
+    var latch = new CountDownLatch(1);
+    var processingStarted = new CountDownLatch(1);
+
+    recreateProcessor(p -> p.setMaxConcurrency(1)
+        .setQueueTimeout(Duration.ofSeconds(1))
+        .setExpiredPayloadsSweepLimit(100)
+        .setBatchTimeoutsHandler(payloads -> timedOutBatches.add(payloads.stream().map(DiscardingQueueProcessor.Payload::getData).toList()))
+        .setProcessor(payload -> {
+          processingStarted.countDown();
+          awaitOrThrow(latch);
+          results.add(payload.getData());
+        }));
+
+    processor.schedule("blocking");
+    // The clock can be moved only after the blocking payload has passed its queue timeout check.
+    awaitOrThrow(processingStarted);
+    for (var i = 0; i < 5; i++) {
+      processor.schedule(String.valueOf(i));
+    }
+    testClock.tick(Duration.ofSeconds(2));
+    processor.schedule("fresh");
+    latch.countDown();
+
+    await().until(() -> results, equalTo(List.of("blocking", "fresh")));
+    await().until(() -> timedOutBatches, equalTo(List.of(List.of("0", "1", "2", "3", "4"))));
+    await().until(() -> processor.getQueueSize(), equalTo(0));
+  }
+
+  @Test
+  void payloadsWithPendingCoalescingKeyAreMerged() {
+    var latch = new CountDownLatch(1);
+
+    recreateProcessor(p -> p.setMaxConcurrency(1)
+        .setCoalescingKeyExtractor(data -> data.split(":")[0])
+        .setProcessor(payload -> {
+          awaitOrThrow(latch);
+          results.add(payload.getData());
+        }));
+
+    processor.schedule("blocking");
+    await().until(() -> processor.getConcurrency(), equalTo(1));
+
+    assertThat(processor.schedule("a:0").isCoalesced(), equalTo(false));
+    assertThat(processor.schedule("b:0").isCoalesced(), equalTo(false));
+    // Way above the hard queue limit.
+    for (var i = 1; i < 50; i++) {
+      var result = processor.schedule("a:" + i);
+      assertThat(result.isScheduled(), equalTo(true));
+      assertThat(result.isCoalesced(), equalTo(true));
+    }
+    assertThat(processor.getQueueSize(), equalTo(3));
+    latch.countDown();
+
+    await().until(() -> results, equalTo(List.of("blocking", "a:49", "b:0")));
+
+    processor.schedule("a:50");
+    await().until(() -> results.size(), equalTo(4));
+    assertThat(results.get(3), equalTo("a:50"));
+  }
+
+  private DiscardingQueueProcessor<String, String> createProcessor() {
+    var newProcessor = new DiscardingQueueProcessor<String, String>(executorService, payload -> results.add(payload.getData())) {
+      @Override
+      public void onError(Throwable t) {
+        errors.add(t);
+      }
+    };
+    newProcessor.setSoftQueueLimit(5);
+    newProcessor.setHardQueueLimit(10);
+    return newProcessor;
+  }
+
+  private static double queueSizeGauge(SimpleMeterRegistry meterRegistry) {
+    return meterRegistry.get("tw.dqp.queue.size").tag("processor", "test").gauge().value();
+  }
+
+  private void recreateProcessor(Consumer<DiscardingQueueProcessor<String, String>> configurer) {
+    processor.stop();
+    processor = createProcessor();
+    configurer.accept(processor);
+    processor.start();
+  }
+
+  private static boolean isVirtual(Thread thread) {
+    return ExceptionUtils.doUnchecked(() -> VirtualThreads.isAvailable() && (Boolean) Thread.class.getMethod("isVirtual").invoke(thread));
+  }
+
   void awaitOrThrow(CountDownLatch latch) {
     ExceptionUtils.doUnchecked(() -> Preconditions.checkState(latch.await(10, TimeUnit.SECONDS)));
   }
@@ -0,0 +1,50 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.transferwise.common.baseutils.concurrency.ScheduledTaskExecutor.OverrunPolicy;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class FixedRateScheduleTest {
+
+  @Test
+  void executionsStayAlignedToTheFirstExecutionTime() {
+    var schedule = new FixedRateSchedule(Duration.ofMillis(100), OverrunPolicy.SKIP);
+
+    assertEquals(1100, schedule.nextExecutionTime(1000, 1030));
+    assertEquals(1200, schedule.nextExecutionTime(1100, 1199));
+    assertEquals(0, schedule.getOverrunsCount());
+  }
+
+  @Test
+  void skipPolicySkipsAllMissedExecutions() {
+    var schedule = new FixedRateSchedule(Duration.ofMillis(100), OverrunPolicy.SKIP);
+
+    assertEquals(1400, schedule.nextExecutionTime(1000, 1350));
+    assertEquals(1, schedule.getOverrunsCount());
+    assertEquals(3, schedule.getSkippedExecutionsCount());
+  }
+
+  @Test
+  void catchUpOncePolicyRunsOnceForAllMissedExecutions() {
+    var schedule = new FixedRateSchedule(Duration.ofMillis(100), OverrunPolicy.CATCH_UP_ONCE);
+
+    assertEquals(1300, schedule.nextExecutionTime(1000, 1350));
+    assertEquals(1400, schedule.nextExecutionTime(1300, 1360));
+    assertEquals(1, schedule.getOverrunsCount());
+    assertEquals(2, schedule.getSkippedExecutionsCount());
+  }
+
+  @Test
+  void runAllPolicyRunsEveryMissedExecution() {
+    var schedule = new FixedRateSchedule(Duration.ofMillis(100), OverrunPolicy.RUN_ALL);
+
+    assertEquals(1100, schedule.nextExecutionTime(1000, 1350));
+    assertEquals(1200, schedule.nextExecutionTime(1100, 1355));
+    assertEquals(1300, schedule.nextExecutionTime(1200, 1360));
+    assertEquals(1400, schedule.nextExecutionTime(1300, 1365));
+    assertEquals(3, schedule.getOverrunsCount());
+    assertEquals(0, schedule.getSkippedExecutionsCount());
+  }
+}
@@ -0,0 +1,94 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.jupiter.api.Test;
+
+public class MpmcArrayQueueTest {
+
+  @Test
+  void capacityIsRoundedUpToPowerOfTwo() {
+    assertEquals(1, new MpmcArrayQueue<String>(1).capacity());
+    assertEquals(8, new MpmcArrayQueue<String>(5).capacity());
+    assertEquals(2048, new MpmcArrayQueue<String>(2000).capacity());
+  }
+
+  @Test
+  void elementsAreTakenInOrderAndCapacityIsEnforced() {
+    var queue = new MpmcArrayQueue<Integer>(4);
+    assertNull(queue.peek());
+    assertNull(queue.poll());
+
+    // Going around the ring a few times.
+    for (var round = 0; round < 3; round++) {
+      for (var i = 0; i < 4; i++) {
+        assertTrue(queue.offer(i));
+      }
+      assertFalse(queue.offer(4));
+
+      for (var i = 0; i < 4; i++) {
+        assertEquals(i, queue.peek());
+        assertEquals(i, queue.poll());
+      }
+      assertNull(queue.poll());
+    }
+  }
+
+  @Test
+  void everyElementIsTakenExactlyOnceByConcurrentConsumers() throws Exception {
+    var producersCount = 4;
+    var consumersCount = 4;
+    var elementsPerProducer = 10_000;
+    var queue = new MpmcArrayQueue<Integer>(64);
+    var takenCounts = new AtomicIntegerArray(producersCount * elementsPerProducer);
+    var takenCount = new AtomicInteger();
+
+    ExecutorService executorService = Executors.newFixedThreadPool(producersCount + consumersCount);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (var p = 0; p < producersCount; p++) {
+        var offset = p * elementsPerProducer;
+        futures.add(executorService.submit(() -> {
+          for (var i = 0; i < elementsPerProducer; i++) {
+            while (!queue.offer(offset + i)) {
+              Thread.yield();
+            }
+          }
+        }));
+      }
+      for (var c = 0; c < consumersCount; c++) {
+        futures.add(executorService.submit(() -> {
+          while (takenCount.get() < producersCount * elementsPerProducer) {
+            Integer element = queue.poll();
+            if (element == null) {
+              Thread.yield();
+            } else {
+              takenCounts.incrementAndGet(element);
+              takenCount.incrementAndGet();
+            }
+          }
+        }));
+      }
+      for (var future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    for (var i = 0; i < takenCounts.length(); i++) {
+      assertEquals(1, takenCounts.get(i));
+    }
+  }
+}
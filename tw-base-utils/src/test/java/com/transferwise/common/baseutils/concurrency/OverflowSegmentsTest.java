@@ -0,0 +1,93 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class OverflowSegmentsTest {
+
+  private Path directory;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    directory = Files.createTempDirectory("overflow-segments-test");
+  }
+
+  @AfterEach
+  void afterEach() throws IOException {
+    Files.delete(directory);
+  }
+
+  @Test
+  void recordsAreReadInOrderAndReadSegmentsAreDeleted() throws IOException {
+    // Every record takes 12 header bytes and 2 data bytes, so a segment holds 2 records.
+    try (var segments = new OverflowSegments(directory, 30, 1024)) {
+      assertNull(segments.read());
+
+      for (var i = 10; i < 20; i++) {
+        assertTrue(segments.append(i, bytes(i)));
+      }
+      assertEquals(10, segments.getRecordsCount());
+      assertEquals(5, filesCount());
+
+      for (var i = 10; i < 20; i++) {
+        var record = segments.read();
+        assertEquals(i, record.getSchedulingTimeMillis());
+        assertArrayEquals(bytes(i), record.getData());
+      }
+      assertNull(segments.read());
+      assertTrue(segments.isEmpty());
+      // The last segment is kept for appending.
+      assertEquals(1, filesCount());
+    }
+    assertEquals(0, filesCount());
+  }
+
+  @Test
+  void maximumSizeIsEnforced() throws IOException {
+    try (var segments = new OverflowSegments(directory, 1024, 30)) {
+      assertTrue(segments.append(0, bytes(10)));
+      assertTrue(segments.append(0, bytes(11)));
+      assertFalse(segments.append(0, bytes(12)));
+
+      segments.read();
+      assertTrue(segments.append(0, bytes(12)));
+      assertEquals(2, segments.getRecordsCount());
+    }
+    assertEquals(0, filesCount());
+  }
+
+  @Test
+  void nothingIsAppendedAfterClosing() throws IOException {
+    var segments = new OverflowSegments(directory, 1024, 1024);
+    assertTrue(segments.append(0, bytes(10)));
+    assertFalse(segments.closeIfEmpty());
+    assertEquals(1, filesCount());
+
+    segments.read();
+    assertTrue(segments.closeIfEmpty());
+    assertFalse(segments.append(0, bytes(11)));
+    assertTrue(segments.isEmpty());
+    assertEquals(0, filesCount());
+  }
+
+  private static byte[] bytes(int i) {
+    return String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private long filesCount() throws IOException {
+    try (var files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+}
@@ -5,20 +5,28 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.google.common.base.Preconditions;
 import com.transferwise.common.baseutils.BaseTest;
 import com.transferwise.common.baseutils.clock.TestClock;
+import com.transferwise.common.baseutils.concurrency.ScheduledTaskExecutor.OverrunPolicy;
 import com.transferwise.common.baseutils.concurrency.ScheduledTaskExecutor.TaskHandle;
+import com.transferwise.common.baseutils.meters.cache.MeterCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import lombok.SneakyThrows;
@@ -163,6 +171,344 @@ public class SimpleScheduledTaskExecutorTest extends BaseTest {
     assertTrue(scheduledTaskExecutor.waitUntilStopped(Duration.ofSeconds(2)));
   }
 
+  @Test
+  public void testIfFixedRateTasksStayAligned() {
+    var testClock = new TestClock();
+    var startTime = testClock.instant();
+    List<Instant> executionTimes = new CopyOnWriteArrayList<>();
+    var executionBlocker = new Semaphore(0);
+
+    var scheduledTaskExecutor = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock);
+    scheduledTaskExecutor.start();
+
+    var taskHandle = scheduledTaskExecutor.scheduleAtFixedRate(() -> {
+      executionTimes.add(testClock.instant());
+      executionBlocker.acquireUninterruptibly();
+    }, Duration.ofSeconds(1), Duration.ofSeconds(1), OverrunPolicy.SKIP);
+
+    testClock.tick(Duration.ofMillis(1000));
+    await().until(() -> executionTimes.size() == 1);
+    // Execution time does not move the next execution.
+    testClock.tick(Duration.ofMillis(300));
+    executionBlocker.release();
+    await().until(() -> scheduledTaskExecutor.getTaskQueueSize() == 1);
+    testClock.tick(Duration.ofMillis(700));
+    await().until(() -> executionTimes.size() == 2);
+    assertEquals(startTime.plusMillis(2000), executionTimes.get(1));
+
+    // Overrunning the next two executions.
+    testClock.tick(Duration.ofMillis(2500));
+    executionBlocker.release();
+    await().until(() -> scheduledTaskExecutor.getTaskQueueSize() == 1);
+    assertEquals(1, taskHandle.getOverrunsCount());
+    assertEquals(2, taskHandle.getSkippedExecutionsCount());
+    testClock.tick(Duration.ofMillis(500));
+    await().until(() -> executionTimes.size() == 3);
+    assertEquals(startTime.plusMillis(5000), executionTimes.get(2));
+
+    executionBlocker.release();
+    await().until(() -> !taskHandle.isWorking());
+    taskHandle.stop();
+    scheduledTaskExecutor.stop();
+    assertTrue(scheduledTaskExecutor.waitUntilStopped(Duration.ofSeconds(2)));
+  }
+
+  @Test
+  public void testIfDefaultFixedRateSchedulingStaysAligned() {
+    var testClock = TestClock.createAndRegister();
+    var startTime = testClock.instant();
+    List<Instant> executionTimes = new CopyOnWriteArrayList<>();
+    var executionBlocker = new Semaphore(0);
+
+    var delegate = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock);
+    var scheduledTaskExecutor = new OnceOnlyScheduledTaskExecutor(delegate);
+    scheduledTaskExecutor.start();
+
+    var taskHandle = scheduledTaskExecutor.scheduleAtFixedRate(NamedTask.of("fixedRate", () -> {
+      executionTimes.add(testClock.instant());
+      executionBlocker.acquireUninterruptibly();
+    }), Duration.ofSeconds(1), Duration.ofSeconds(1), OverrunPolicy.SKIP);
+
+    testClock.tick(Duration.ofMillis(1000));
+    await().until(() -> executionTimes.size() == 1 && taskHandle.isWorking());
+    testClock.tick(Duration.ofMillis(300));
+    executionBlocker.release();
+    await().until(() -> delegate.getTaskQueueSize() == 1);
+    testClock.tick(Duration.ofMillis(700));
+    await().until(() -> executionTimes.size() == 2);
+    assertEquals(startTime.plusMillis(2000), executionTimes.get(1));
+
+    testClock.tick(Duration.ofMillis(2500));
+    executionBlocker.release();
+    await().until(() -> delegate.getTaskQueueSize() == 1);
+    assertEquals(1, taskHandle.getOverrunsCount());
+    assertEquals(2, taskHandle.getSkippedExecutionsCount());
+
+    taskHandle.stop();
+    assertTrue(taskHandle.waitUntilStopped(Duration.ofSeconds(2)));
+    assertEquals(0, delegate.getTaskQueueSize());
+    testClock.tick(Duration.ofSeconds(10));
+    assertEquals(2, executionTimes.size());
+
+    scheduledTaskExecutor.stop();
+    assertTrue(scheduledTaskExecutor.waitUntilStopped(Duration.ofSeconds(2)));
+  }
+
+  @Test
+  public void testIfCronTasksAreExecutedAtMatchingTimes() {
+    var testClock = new TestClock(Instant.parse("2026-01-01T00:00:05Z"), ZoneOffset.UTC);
+    List<Instant> executionTimes = new CopyOnWriteArrayList<>();
+
+    var scheduledTaskExecutor = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock);
+    scheduledTaskExecutor.start();
+
+    var taskHandle = scheduledTaskExecutor.scheduleWithCron(() -> executionTimes.add(testClock.instant()), "*/10 * * * * *");
+    assertThrows(IllegalArgumentException.class, () -> scheduledTaskExecutor.scheduleWithCron(() -> {
+    }, "* * *"));
+
+    testClock.tick(Duration.ofMillis(4999));
+    assertEquals(0, executionTimes.size());
+    testClock.tick(Duration.ofMillis(1));
+    await().until(() -> executionTimes.size() == 1 && scheduledTaskExecutor.getTaskQueueSize() == 1);
+    // Executed late, at 00:35, and 00:30 is skipped.
+    testClock.tick(Duration.ofSeconds(25));
+    await().until(() -> executionTimes.size() == 2 && scheduledTaskExecutor.getTaskQueueSize() == 1);
+    testClock.tick(Duration.ofSeconds(5));
+    await().until(() -> executionTimes.size() == 3);
+    assertEquals(List.of(Instant.parse("2026-01-01T00:00:10Z"), Instant.parse("2026-01-01T00:00:35Z"), Instant.parse("2026-01-01T00:00:40Z")),
+        executionTimes);
+
+    taskHandle.stop();
+    scheduledTaskExecutor.stop();
+    assertTrue(scheduledTaskExecutor.waitUntilStopped(Duration.ofSeconds(2)));
+  }
+
+  @Test
+  public void testIfFirstCronExecutionHasOnlyTheInitialJitter() {
+    var testClock = new TestClock(Instant.parse("2026-01-01T00:00:05Z"), ZoneOffset.UTC);
+    List<Instant> executionTimes = new CopyOnWriteArrayList<>();
+
+    var scheduledTaskExecutor = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock);
+    scheduledTaskExecutor.start();
+
+    var jitter = new Jitter().setMaxInitialJitter(Duration.ofMillis(500)).setMaxPeriodJitter(Duration.ofHours(1));
+    var taskHandle = scheduledTaskExecutor.scheduleWithCron(() -> executionTimes.add(testClock.instant()), "*/10 * * * * *", jitter);
+
+    testClock.tick(Duration.ofMillis(4999));
+    assertEquals(0, executionTimes.size());
+    testClock.tick(Duration.ofMillis(501));
+    await().until(() -> executionTimes.size() == 1);
+    assertFalse(executionTimes.get(0).isBefore(Instant.parse("2026-01-01T00:00:10Z")));
+    assertFalse(executionTimes.get(0).isAfter(Instant.parse("2026-01-01T00:00:10.500Z")));
+
+    taskHandle.stop();
+    scheduledTaskExecutor.stop();
+    assertTrue(scheduledTaskExecutor.waitUntilStopped(Duration.ofSeconds(2)));
+  }
+
+  @Test
+  public void testIfDefaultCronSchedulingExecutesAtMatchingTimes() {
+    var testClock = TestClock.createAndRegister(Instant.parse("2026-01-01T00:00:05Z"), ZoneOffset.UTC);
+    List<Instant> executionTimes = new CopyOnWriteArrayList<>();
+
+    var delegate = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock);
+    var scheduledTaskExecutor = new OnceOnlyScheduledTaskExecutor(delegate);
+    scheduledTaskExecutor.start();
+
+    var jitter = new Jitter().setMaxPeriodJitter(Duration.ofMillis(500));
+    var taskHandle = scheduledTaskExecutor.scheduleWithCron(() -> executionTimes.add(testClock.instant()), "*/10 * * * * *", jitter);
+
+    testClock.tick(Duration.ofMillis(4999));
+    assertEquals(0, executionTimes.size());
+    testClock.tick(Duration.ofMillis(1));
+    await().until(() -> executionTimes.size() == 1 && delegate.getTaskQueueSize() == 1);
+    testClock.tick(Duration.ofMillis(9999));
+    assertEquals(1, executionTimes.size());
+    testClock.tick(Duration.ofMillis(501));
+    await().until(() -> executionTimes.size() == 2);
+    assertEquals(Instant.parse("2026-01-01T00:00:10Z"), executionTimes.get(0));
+
+    taskHandle.stop();
+    scheduledTaskExecutor.stop();
+    assertTrue(scheduledTaskExecutor.waitUntilStopped(Duration.ofSeconds(2)));
+  }
+
+  @Test
+  public void testIfJitterDelaysExecutionsWithinItsLimits() {
+    var testClock = new TestClock();
+    var executedCount = new AtomicInteger();
+
+    var scheduledTaskExecutor = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock);
+    scheduledTaskExecutor.start();
+
+    var jitter = new Jitter().setMaxInitialJitter(Duration.ofMillis(500)).setMaxPeriodJitter(Duration.ofMillis(500));
+    var taskHandle = scheduledTaskExecutor.scheduleAtFixedInterval(executedCount::incrementAndGet, Duration.ofSeconds(1), Duration.ofSeconds(1),
+        jitter);
+
+    testClock.tick(Duration.ofMillis(999));
+    assertEquals(0, executedCount.get());
+    testClock.tick(Duration.ofMillis(501));
+    await().until(() -> executedCount.get() == 1 && scheduledTaskExecutor.getTaskQueueSize() == 1);
+
+    testClock.tick(Duration.ofMillis(999));
+    assertEquals(1, executedCount.get());
+    testClock.tick(Duration.ofMillis(501));
+    await().until(() -> executedCount.get() == 2);
+
+    taskHandle.stop();
+    scheduledTaskExecutor.stop();
+    assertTrue(scheduledTaskExecutor.waitUntilStopped(Duration.ofSeconds(2)));
+  }
+
+  @Test
+  public void testIfMetricsAreRegistered() {
+    var testClock = new TestClock();
+    var meterRegistry = new SimpleMeterRegistry();
+    var executedCount = new AtomicInteger();
+
+    var scheduledTaskExecutor = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock).setName("test").setMeterCache(new MeterCache(meterRegistry));
+    scheduledTaskExecutor.start();
+
+    var taskHandle = scheduledTaskExecutor.scheduleOnce(NamedTask.of("myTask", executedCount::incrementAndGet), Duration.ofSeconds(1));
+    var failingTaskHandle = scheduledTaskExecutor.scheduleOnce(NamedTask.of("myTask", () -> {
+      executedCount.incrementAndGet();
+      throw new IllegalStateException("Expected test failure.");
+    }), Duration.ofSeconds(1));
+    scheduledTaskExecutor.scheduleOnce(executedCount::incrementAndGet, Duration.ofHours(1));
+    assertEquals(3d, meterRegistry.get("tw.ste.queue.size").tag("executor", "test").gauge().value());
+
+    testClock.tick(Duration.ofMillis(1500));
+    await().until(() -> executedCount.get() == 2 && !taskHandle.isWorking() && !failingTaskHandle.isWorking());
+
+    assertEquals(2, meterRegistry.get("tw.ste.execution.time").tag("executor", "test").tag("task", "myTask").timer().count());
+    var dispatchLagTimer = meterRegistry.get("tw.ste.dispatch.lag").tag("executor", "test").tag("task", "myTask").timer();
+    assertEquals(2, dispatchLagTimer.count());
+    assertTrue(dispatchLagTimer.totalTime(TimeUnit.MILLISECONDS) >= 1000);
+    assertEquals(1d, meterRegistry.get("tw.ste.failed").tag("executor", "test").tag("task", "myTask").counter().count());
+    assertEquals(1d, meterRegistry.get("tw.ste.queue.size").tag("executor", "test").gauge().value());
+    assertEquals(0d, meterRegistry.get("tw.ste.working").tag("executor", "test").gauge().value());
+
+    scheduledTaskExecutor.stop();
+  }
+
+  @Test
+  public void testIfMetricsFollowARecreatedExecutor() {
+    var testClock = new TestClock();
+    var meterCache = new MeterCache(new SimpleMeterRegistry());
+
+    var firstExecutor = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock).setName("test").setMeterCache(meterCache);
+    firstExecutor.start();
+    firstExecutor.scheduleOnce(() -> {
+    }, Duration.ofHours(1));
+    firstExecutor.scheduleOnce(() -> {
+    }, Duration.ofHours(1));
+    firstExecutor.stop();
+    assertTrue(firstExecutor.waitUntilStopped(Duration.ofSeconds(2)));
+
+    var secondExecutor = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock).setName("test").setMeterCache(meterCache);
+    secondExecutor.start();
+    secondExecutor.scheduleOnce(() -> {
+    }, Duration.ofHours(1));
+
+    var meterRegistry = meterCache.getMeterRegistry();
+    assertEquals(1d, meterRegistry.get("tw.ste.queue.size").tag("executor", "test").gauge().value());
+    assertEquals(0d, meterRegistry.get("tw.ste.working").tag("executor", "test").gauge().value());
+
+    secondExecutor.stop();
+    assertTrue(secondExecutor.waitUntilStopped(Duration.ofSeconds(2)));
+  }
+
+  @Test
+  public void testIfDispatcherParksUntilTheNextExecutionTime() {
+    var executedCount = new AtomicInteger();
+
+    // With the system clock, the tick does not limit how long the dispatcher parks.
+    var scheduledTaskExecutor = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofHours(1));
+    scheduledTaskExecutor.start();
+
+    scheduledTaskExecutor.scheduleOnce(executedCount::incrementAndGet, Duration.ofHours(1));
+    scheduledTaskExecutor.scheduleOnce(executedCount::incrementAndGet, Duration.ofMillis(50));
+    await().until(() -> executedCount.get() == 1);
+
+    scheduledTaskExecutor.stop();
+    assertTrue(scheduledTaskExecutor.waitUntilStopped(Duration.ofSeconds(2)));
+  }
+
+  @Test
+  public void testIfTimerSlackGroupsCloseExecutionTimes() {
+    Map<Integer, Long> executionTimes = new ConcurrentHashMap<>();
+
+    var scheduledTaskExecutor = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTimerSlack(Duration.ofMillis(300));
+    scheduledTaskExecutor.start();
+
+    long startTimeNanos = System.nanoTime();
+    scheduledTaskExecutor.scheduleOnce(() -> executionTimes.put(1, System.nanoTime()), Duration.ofMillis(50));
+    scheduledTaskExecutor.scheduleOnce(() -> executionTimes.put(2, System.nanoTime()), Duration.ofMillis(250));
+    await().until(() -> executionTimes.size() == 2);
+
+    assertTrue(executionTimes.get(1) - startTimeNanos >= TimeUnit.MILLISECONDS.toNanos(250));
+    assertTrue(Math.abs(executionTimes.get(2) - executionTimes.get(1)) < TimeUnit.MILLISECONDS.toNanos(100));
+
+    scheduledTaskExecutor.stop();
+  }
+
+  @Test
+  public void testIfTaskGroupsLimitConcurrency() {
+    var runningCount = new AtomicInteger();
+    var maxRunningCount = new AtomicInteger();
+    var executedCount = new AtomicInteger();
+    var executionBlocker = new Semaphore(0);
+
+    var scheduledTaskExecutor = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool())
+        .setTaskGroups(List.of(new TaskGroup().setName("slow").setMaxConcurrency(2), new TaskGroup().setName("bounded").setMaxQueueSize(1)));
+    scheduledTaskExecutor.start();
+
+    for (int i = 0; i < 5; i++) {
+      scheduledTaskExecutor.scheduleOnce(NamedTask.of("slowTask", "slow", () -> {
+        maxRunningCount.accumulateAndGet(runningCount.incrementAndGet(), Math::max);
+        executionBlocker.acquireUninterruptibly();
+        runningCount.decrementAndGet();
+        executedCount.incrementAndGet();
+      }), Duration.ZERO);
+    }
+    await().until(() -> runningCount.get() == 2);
+
+    // Other tasks are not held up by the group.
+    var otherTaskExecuted = new AtomicInteger();
+    scheduledTaskExecutor.scheduleOnce(otherTaskExecuted::incrementAndGet, Duration.ZERO);
+    await().until(() -> otherTaskExecuted.get() == 1);
+
+    executionBlocker.release(5);
+    await().until(() -> executedCount.get() == 5);
+    assertEquals(2, maxRunningCount.get());
+
+    // One execution runs, one waits in the queue and the last one is skipped.
+    var boundedExecutedCount = new AtomicInteger();
+    for (int i = 0; i < 3; i++) {
+      scheduledTaskExecutor.scheduleOnce(NamedTask.of("boundedTask", "bounded", () -> {
+        executionBlocker.acquireUninterruptibly();
+        boundedExecutedCount.incrementAndGet();
+      }), Duration.ofMillis(i * 50));
+    }
+    await().until(() -> scheduledTaskExecutor.getTaskQueueSize() == 0);
+    executionBlocker.release(3);
+    await().until(() -> boundedExecutedCount.get() == 2);
+
+    assertThrows(IllegalArgumentException.class, () -> scheduledTaskExecutor.scheduleOnce(NamedTask.of("task", "unknown", () -> {
+    }), Duration.ZERO));
+
+    scheduledTaskExecutor.stop();
+  }
+
   @Test
   public void testIfAfterTaskStopTheTaskQueueIsCleaned() {
     Map<String, Long> results = new ConcurrentHashMap<>();
@@ -187,6 +533,73 @@ public class SimpleScheduledTaskExecutorTest extends BaseTest {
     scheduledTaskExecutor.stop();
   }
 
+  @Test
+  public void testIfStoppedTasksAreSkippedAndPurged() {
+    var testClock = new TestClock();
+    var executedCount = new AtomicInteger();
+
+    var scheduledTaskExecutor = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock);
+    scheduledTaskExecutor.start();
+
+    List<TaskHandle> taskHandles = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      taskHandles.add(scheduledTaskExecutor.scheduleOnce(executedCount::incrementAndGet, Duration.ofSeconds(1 + i % 2)));
+    }
+    for (int i = 0; i < 900; i++) {
+      taskHandles.get(i).stop();
+    }
+    assertEquals(100, scheduledTaskExecutor.getTaskQueueSize());
+    // The dispatcher purges the stopped tasks from the queue, before any of those is due.
+    await().until(() -> scheduledTaskExecutor.getQueueEntriesCount() == 100);
+    assertEquals(100, scheduledTaskExecutor.getTaskQueueSize());
+
+    testClock.tick(Duration.ofMillis(1001));
+    await().until(() -> executedCount.get() == 50);
+    assertEquals(50, scheduledTaskExecutor.getTaskQueueSize());
+    assertEquals(50, scheduledTaskExecutor.getQueueEntriesCount());
+
+    testClock.tick(Duration.ofMillis(1000));
+    await().until(() -> executedCount.get() == 100);
+    assertEquals(0, scheduledTaskExecutor.getTaskQueueSize());
+    assertEquals(0, scheduledTaskExecutor.getQueueEntriesCount());
+
+    scheduledTaskExecutor.stop();
+  }
+
+  @Test
+  public void testIfTaskStoppedWhileRunningIsNotRescheduled() {
+    var testClock = new TestClock();
+    var executedCount = new AtomicInteger();
+    var executionBlocker = new Semaphore(0);
+
+    var scheduledTaskExecutor = new SimpleScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock);
+    scheduledTaskExecutor.start();
+
+    var taskHandle = scheduledTaskExecutor.scheduleAtFixedInterval(() -> {
+      executedCount.incrementAndGet();
+      executionBlocker.acquireUninterruptibly();
+    }, Duration.ofSeconds(1), Duration.ofSeconds(1));
+
+    testClock.tick(Duration.ofMillis(1000));
+    await().until(taskHandle::isWorking);
+    taskHandle.stop();
+    assertFalse(taskHandle.hasStopped());
+    assertFalse(taskHandle.waitUntilStopped(Duration.ZERO));
+
+    executionBlocker.release();
+    assertTrue(taskHandle.waitUntilStopped(Duration.ofSeconds(2)));
+    assertFalse(taskHandle.isWorking());
+    assertEquals(0, scheduledTaskExecutor.getTaskQueueSize());
+
+    testClock.tick(Duration.ofMillis(2000));
+    assertEquals(1, executedCount.get());
+
+    scheduledTaskExecutor.stop();
+    assertTrue(scheduledTaskExecutor.waitUntilStopped(Duration.ofSeconds(2)));
+  }
+
   @Test
   public void testIfSchedulingOnceWorks() {
     TestClock testClock = new TestClock();
@@ -258,4 +671,46 @@ public class SimpleScheduledTaskExecutorTest extends BaseTest {
 
     scheduledTaskExecutor.stop();
   }
+
+  /**
+   * Implements only the methods without a default, so the default implementations built on `scheduleOnce` are used.
+   */
+  private static class OnceOnlyScheduledTaskExecutor implements ScheduledTaskExecutor {
+
+    private final ScheduledTaskExecutor delegate;
+
+    OnceOnlyScheduledTaskExecutor(ScheduledTaskExecutor delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public TaskHandle scheduleAtFixedInterval(Runnable task, Duration initialDelay, Duration period) {
+      return delegate.scheduleAtFixedInterval(task, initialDelay, period);
+    }
+
+    @Override
+    public TaskHandle scheduleOnce(Runnable task, Duration initialDelay) {
+      return delegate.scheduleOnce(task, initialDelay);
+    }
+
+    @Override
+    public void start() {
+      delegate.start();
+    }
+
+    @Override
+    public void stop() {
+      delegate.stop();
+    }
+
+    @Override
+    public boolean hasStopped() {
+      return delegate.hasStopped();
+    }
+
+    @Override
+    public boolean waitUntilStopped(Duration waitTime) {
+      return delegate.waitUntilStopped(waitTime);
+    }
+  }
 }
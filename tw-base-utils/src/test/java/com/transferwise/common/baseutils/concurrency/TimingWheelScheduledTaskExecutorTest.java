@@ -0,0 +1,203 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.transferwise.common.baseutils.BaseTest;
+import com.transferwise.common.baseutils.clock.TestClock;
+import com.transferwise.common.baseutils.concurrency.ScheduledTaskExecutor.TaskHandle;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MultipleStringLiterals"})
+public class TimingWheelScheduledTaskExecutorTest extends BaseTest {
+
+  private static final Instant START_TIME = Instant.parse("2026-01-01T00:00:00Z");
+
+  @Test
+  public void testHappyFlow() {
+    var testClock = new TestClock(START_TIME);
+    Map<String, Long> results = new ConcurrentHashMap<>();
+
+    var scheduledTaskExecutor = new TimingWheelScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock);
+    scheduledTaskExecutor.start();
+    assertFalse(scheduledTaskExecutor.hasStopped());
+
+    String resultKey = "myTask";
+    TaskHandle taskHandle = scheduledTaskExecutor.scheduleAtFixedInterval(() -> results.merge(resultKey, 1L, Long::sum),
+        Duration.ofSeconds(1), Duration.ofSeconds(2));
+    assertFalse(taskHandle.hasStopped());
+
+    testClock.tick(Duration.ofMillis(500));
+    assertNull(results.get(resultKey));
+    testClock.tick(Duration.ofMillis(501));
+    await().until(() -> results.containsKey(resultKey) && results.get(resultKey) == 1L && !taskHandle.isWorking());
+    // Next execution time is rounded up to the tick.
+    testClock.tick(Duration.ofMillis(2004));
+    await().until(() -> results.get(resultKey) == 2L && !taskHandle.isWorking());
+
+    taskHandle.stop();
+    taskHandle.waitUntilStopped(Duration.ofMillis(2000));
+    assertTrue(taskHandle.hasStopped());
+    testClock.tick(Duration.ofMillis(2001));
+    assertEquals(2L, (long) results.get(resultKey));
+
+    scheduledTaskExecutor.stop();
+    assertTrue(scheduledTaskExecutor.waitUntilStopped(Duration.ofSeconds(2)));
+  }
+
+  @Test
+  public void testIfTasksFarInTheFutureMoveDownTheWheels() {
+    var testClock = new TestClock(START_TIME);
+    Map<Long, Instant> results = new ConcurrentHashMap<>();
+
+    // Rotations of the wheels are 40ms, 160ms, 640ms, 2560ms and 10240ms.
+    var scheduledTaskExecutor = new TimingWheelScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(10))
+        .setWheelSize(4).setClock(testClock);
+    scheduledTaskExecutor.start();
+
+    long[] delaysMillis = {25, 130, 900, 5000};
+    for (long delayMillis : delaysMillis) {
+      scheduledTaskExecutor.scheduleOnce(() -> results.put(delayMillis, testClock.instant()), Duration.ofMillis(delayMillis));
+    }
+    assertEquals(4, scheduledTaskExecutor.getTaskQueueSize());
+
+    // Waiting for every task as soon as it is due, so the clock shows the time the task was executed at.
+    int dueCount = 0;
+    for (long nowMillis = 10; dueCount < delaysMillis.length; nowMillis += 10) {
+      testClock.tick(Duration.ofMillis(10));
+      if (delaysMillis[dueCount] <= nowMillis) {
+        long delayMillis = delaysMillis[dueCount++];
+        await().until(() -> results.containsKey(delayMillis));
+      }
+      assertEquals(dueCount, results.size());
+    }
+
+    for (long delayMillis : delaysMillis) {
+      long executedAfterMillis = Duration.between(START_TIME, results.get(delayMillis)).toMillis();
+      assertTrue(executedAfterMillis >= delayMillis, "Executed early: " + delayMillis);
+      assertTrue(executedAfterMillis < delayMillis + 10, "Executed late: " + delayMillis);
+    }
+    assertEquals(0, scheduledTaskExecutor.getTaskQueueSize());
+
+    scheduledTaskExecutor.stop();
+  }
+
+  @Test
+  public void testIfAfterTaskStopTheTaskQueueIsCleaned() {
+    var scheduledTaskExecutor = new TimingWheelScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5));
+    scheduledTaskExecutor.start();
+
+    List<TaskHandle> taskHandles = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      taskHandles.add(scheduledTaskExecutor.scheduleAtFixedInterval(() -> {
+      }, Duration.ofHours(1 + i), Duration.ofHours(2)));
+    }
+
+    assertEquals(100, scheduledTaskExecutor.getTaskQueueSize());
+    taskHandles.get(10).stop();
+    assertEquals(99, scheduledTaskExecutor.getTaskQueueSize());
+    taskHandles.forEach(TaskHandle::stop);
+    assertEquals(0, scheduledTaskExecutor.getTaskQueueSize());
+
+    scheduledTaskExecutor.stop();
+  }
+
+  @Test
+  public void testIfTasksScheduledBeforeStartAreExecuted() {
+    var scheduledTaskExecutor = new TimingWheelScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5));
+    var executedCount = new AtomicInteger();
+
+    scheduledTaskExecutor.scheduleOnce(executedCount::incrementAndGet, Duration.ZERO);
+    scheduledTaskExecutor.scheduleOnce(executedCount::incrementAndGet, Duration.ofMillis(20));
+    assertEquals(2, scheduledTaskExecutor.getTaskQueueSize());
+    assertThrows(IllegalStateException.class, () -> scheduledTaskExecutor.setTick(Duration.ofMillis(1)));
+
+    scheduledTaskExecutor.start();
+    await().until(() -> executedCount.get() == 2);
+    assertEquals(0, scheduledTaskExecutor.getTaskQueueSize());
+
+    scheduledTaskExecutor.stop();
+  }
+
+  @Test
+  public void testIfStoppingTasksWorksCorrectly() {
+    var testClock = new TestClock(START_TIME);
+    Map<Long, Boolean> results = new ConcurrentHashMap<>();
+
+    var scheduledTaskExecutor = new TimingWheelScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock);
+    scheduledTaskExecutor.start();
+
+    List<TaskHandle> taskHandleList = new ArrayList<>();
+    var finishedCount = new AtomicInteger();
+    for (int i = 0; i < 100; i++) {
+      long finalI = i;
+      taskHandleList.add(scheduledTaskExecutor.scheduleOnce(() -> {
+        results.put(finalI, Boolean.TRUE);
+        finishedCount.incrementAndGet();
+      }, Duration.ofSeconds(1)));
+    }
+
+    taskHandleList.get(50).stop();
+    testClock.tick(Duration.ofMillis(1001));
+
+    await().until(() -> finishedCount.get() == 99);
+
+    assertNull(results.get(50L));
+    for (long i = 0; i < 100; i++) {
+      if (i != 50) {
+        assertNotNull(results.get(i));
+      }
+    }
+
+    scheduledTaskExecutor.stop();
+  }
+
+  @Test
+  public void testIfTaskStoppedWhileRunningIsNotRescheduled() {
+    var testClock = new TestClock(START_TIME);
+    var executedCount = new AtomicInteger();
+    var executionBlocker = new Semaphore(0);
+
+    var scheduledTaskExecutor = new TimingWheelScheduledTaskExecutor("test", Executors.newCachedThreadPool()).setTick(Duration.ofMillis(5))
+        .setClock(testClock);
+    scheduledTaskExecutor.start();
+
+    var taskHandle = scheduledTaskExecutor.scheduleAtFixedInterval(() -> {
+      executedCount.incrementAndGet();
+      executionBlocker.acquireUninterruptibly();
+    }, Duration.ofSeconds(1), Duration.ofSeconds(1));
+
+    testClock.tick(Duration.ofMillis(1000));
+    await().until(taskHandle::isWorking);
+    taskHandle.stop();
+    assertFalse(taskHandle.hasStopped());
+    assertFalse(taskHandle.waitUntilStopped(Duration.ZERO));
+
+    executionBlocker.release();
+    assertTrue(taskHandle.waitUntilStopped(Duration.ofSeconds(2)));
+    assertFalse(taskHandle.isWorking());
+    assertEquals(0, scheduledTaskExecutor.getTaskQueueSize());
+
+    testClock.tick(Duration.ofMillis(2000));
+    assertEquals(1, executedCount.get());
+
+    scheduledTaskExecutor.stop();
+    assertTrue(scheduledTaskExecutor.waitUntilStopped(Duration.ofSeconds(2)));
+  }
+}
@@ -0,0 +1,64 @@
+package com.transferwise.common.baseutils.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTest {
+
+  private static final long MS = Duration.ofMillis(1).toNanos();
+
+  @Test
+  void burstIsAllowedAndThenPermitsArePaced() {
+    var bucket = new TokenBucket(new RateLimit(10, 2), 0);
+
+    assertEquals(0, bucket.tryAcquire(0));
+    assertEquals(0, bucket.tryAcquire(0));
+    assertEquals(100 * MS, bucket.tryAcquire(0));
+    assertEquals(50 * MS, bucket.nanosUntilPermit(50 * MS));
+    assertEquals(0, bucket.tryAcquire(100 * MS));
+
+    // Refilling does not go above the burst.
+    assertTrue(bucket.isFull(10_000 * MS));
+    assertEquals(0, bucket.tryAcquire(10_000 * MS));
+    assertEquals(0, bucket.tryAcquire(10_000 * MS));
+    assertFalse(bucket.isFull(10_000 * MS));
+  }
+
+  @Test
+  void reservationsQueueUp() {
+    var bucket = new TokenBucket(new RateLimit(10), 0);
+
+    assertEquals(0, bucket.reserve(0));
+    assertEquals(100 * MS, bucket.reserve(0));
+    assertEquals(200 * MS, bucket.reserve(0));
+    assertEquals(100 * MS, bucket.reserve(200 * MS));
+
+    // Giving back unused reservations.
+    bucket.release();
+    bucket.release();
+    assertEquals(0, bucket.reserve(200 * MS));
+  }
+
+  @Test
+  void rateCanBeChangedAtRuntime() {
+    var rateLimit = new RateLimit(10);
+    var bucket = new TokenBucket(rateLimit, 0);
+
+    assertEquals(0, bucket.tryAcquire(0));
+    assertEquals(100 * MS, bucket.nanosUntilPermit(0));
+
+    rateLimit.setPermitsPerSecond(100);
+    assertEquals(10 * MS, bucket.nanosUntilPermit(0));
+
+    rateLimit.setBurst(3);
+    assertTrue(bucket.isFull(30 * MS));
+
+    assertThrows(IllegalArgumentException.class, () -> rateLimit.setPermitsPerSecond(0));
+    assertThrows(IllegalArgumentException.class, () -> rateLimit.setBurst(0));
+  }
+}